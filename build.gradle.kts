@@ -76,12 +76,35 @@ intellijPlatform {
     }
 }
 
+// The SIMD similarity kernel (util/SimdKernel) is built on the incubating jdk.incubator.vector module.
+// It gets a source set of its own so only compileSimdJava adds the module; that task still prints
+// javac's "using incubating module(s)" warning, which cannot be turned off, and the rest of the
+// plugin compiles without it. VectorKernels loads the kernel reflectively and falls back to scalar
+// code when the module is missing at runtime.
+sourceSets {
+    create("simd") {
+        compileClasspath += sourceSets["main"].output
+    }
+}
+
 tasks {
     // Set the JVM compatibility versions
     withType<JavaCompile> {
         sourceCompatibility = "21"
         targetCompatibility = "21"
     }
+
+    named<JavaCompile>("compileSimdJava") {
+        options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+    }
+
+    jar {
+        from(sourceSets["simd"].output)
+    }
+
+    runIde {
+        jvmArgs("--add-modules=jdk.incubator.vector")
+    }
 }
 
 kotlin {
@@ -11,6 +11,7 @@ import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.psi.PsiFile;
 import org.example.ta.context.CodeContext;
 import org.example.ta.context.ContextAwareProcessor;
+import org.example.ta.llm.RequestPriority;
 import org.example.ta.ui.TaToolWindowPanel;
 
 public class AskSelectedCodeAction extends AnAction {
@@ -55,7 +56,7 @@ public class AskSelectedCodeAction extends AnAction {
             
             // Set the question in the input area and simulate clicking the ask button
             panel.setInputText(question);
-            panel.ask();
+            panel.ask(RequestPriority.SELECTED_CODE);
         });
     }
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package org.example.ta.actions;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import com.intellij.diff.DiffContentFactory;
 import com.intellij.diff.DiffManager;
 import com.intellij.diff.contents.DocumentContent;
@@ -15,15 +13,14 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 
+import org.example.ta.llm.LlmGateway;
+import org.example.ta.llm.OpenRouterClient;
+import org.example.ta.llm.RequestPriority;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * AI-powered code refactor action using OpenRouter API.
@@ -57,118 +54,60 @@ public class CodeRefactorAction extends AnAction {
         );
         if (instruction == null || instruction.isBlank()) return;
 
-        String apiKey = System.getenv("OPENROUTER_API_KEY");
-        if (apiKey == null || apiKey.isBlank()) {
+        LlmGateway gateway = LlmGateway.getInstance();
+        if (!gateway.hasApiKey()) {
             Messages.showErrorDialog(project, "未检测到 OPENROUTER_API_KEY 环境变量，请在 Run Configurations 中设置。", "错误");
             return;
         }
 
         // Messages.showInfoMessage(project, "正在请求 AI 进行代码重构，请稍候……", "AI 正在处理");
 
-        // 异步执行网络请求
-        new Thread(() -> {
-            try {
-                String suggestion = requestAIRefactor(apiKey, selected, instruction);
-
-                if (suggestion == null || suggestion.isBlank()) {
-                    showError(project, "AI 返回为空，请检查 API Key 或网络。");
-                    return;
-                }
-
-                showDiffAndApply(project, editor, doc, selected, suggestion);
-
-            } catch (Exception ex) {
+        // 异步执行网络请求，通过共享的 HTTP 客户端发送
+        requestAIRefactor(gateway, selected, instruction).whenComplete((suggestion, failure) -> {
+            if (failure != null) {
+                Throwable ex = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure;
                 ex.printStackTrace();
                 String errorMsg = ex.getMessage();
-                if (errorMsg.contains("402")) {
+                if (isQuotaError(ex)) {
                     showError(project, "调用 AI 失败：API配额已用完或者需要付费。请检查您的账户配额或升级付费计划。");
                 } else {
                     showError(project, "调用 AI 失败：" + errorMsg);
                 }
+                return;
+            }
+
+            if (suggestion == null || suggestion.isBlank()) {
+                showError(project, "AI 返回为空，请检查 API Key 或网络。");
+                return;
             }
-        }).start();
+
+            showDiffAndApply(project, editor, doc, selected, suggestion.trim());
+        });
     }
 
     /**
      * 调用 OpenRouter API 获取重构建议
      */
-    private String requestAIRefactor(String apiKey, String code, String instruction) throws Exception {
+    private CompletableFuture<String> requestAIRefactor(LlmGateway gateway, String code, String instruction) {
         String prompt = "请根据以下要求重构这段代码，并仅输出重构后的完整代码：" +
                 "\n要求：" + instruction + "\n代码：\n```java\n" + code + "\n```";
 
-        // 从资源文件中读取模型配置
-        String modelConfigJson = readModelConfig();
-        JSONObject modelConfig = JSON.parseObject(modelConfigJson);
-        String modelName = modelConfig.getString("refactorModel");
-
-        JSONObject payload = new JSONObject();
-        payload.put("model", modelName);
-        com.alibaba.fastjson.JSONArray messages = new com.alibaba.fastjson.JSONArray();
-        messages.add(new JSONObject().fluentPut("role", "system").fluentPut("content", "你是一名专业的Java重构专家。"));
-        messages.add(new JSONObject().fluentPut("role", "user").fluentPut("content", prompt));
-        payload.put("messages", messages);
-
-        URL url = new URL("https://openrouter.ai/api/v1/chat/completions");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Authorization", "Bearer " + apiKey);
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(payload.toJSONString().getBytes(StandardCharsets.UTF_8));
-        }
-
-        int responseCode = conn.getResponseCode();
-        StringBuilder response = new StringBuilder();
-        
-        // 根据响应码选择输入流或错误流
-        BufferedReader br;
-        if (responseCode >= 200 && responseCode < 300) {
-            br = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
-        } else {
-            br = new BufferedReader(new InputStreamReader(conn.getErrorStream(), StandardCharsets.UTF_8));
-        }
-        
-        String line;
-        while ((line = br.readLine()) != null) {
-            response.append(line);
-        }
-
-        // 检查HTTP状态码
-        if (responseCode != 200) {
-            throw new RuntimeException("Server returned HTTP response code: " + responseCode + " for URL: " + url.toString() + ", Response: " + response.toString());
-        }
-
-        JSONObject obj = JSON.parseObject(response.toString());
-        return obj.getJSONArray("choices")
-                .getJSONObject(0)
-                .getJSONObject("message")
-                .getString("content")
-                .trim();
+        List<OpenRouterClient.Message> messages = List.of(
+                new OpenRouterClient.Message("system", "你是一名专业的Java重构专家。"),
+                new OpenRouterClient.Message("user", prompt));
+        return gateway.refactorClient().withPriority(RequestPriority.SELECTED_CODE).chatAsync(messages);
     }
 
     /**
-     * 读取模型配置文件
-     * 
-     * @return 配置文件内容
-     * @throws Exception 读取异常
+     * 判断失败是否由配额用完或需要付费（HTTP 402）引起；重试后的异常把原因包在 cause 中
      */
-    private String readModelConfig() throws Exception {
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream("model-config.json")) {
-            if (is == null) {
-                throw new RuntimeException("找不到模型配置文件: model-config.json");
-            }
-            
-            StringBuilder content = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    content.append(line);
-                }
-            }
-            return content.toString();
+    private static boolean isQuotaError(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            String msg = t.getMessage();
+            if (msg != null && (msg.contains("402") || msg.contains("payment required"))) return true;
         }
+        return false;
     }
 
     /**
@@ -172,6 +172,6 @@ public class ContextAwareProcessor {
             contextText.append(" ").append(imp);
         }
         
-        return documentIndexer.createSimpleVector(contextText.toString());
+        return documentIndexer.embed(contextText.toString());
     }
 }
\ No newline at end of file
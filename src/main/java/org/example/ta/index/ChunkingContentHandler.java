@@ -0,0 +1,94 @@
+package org.example.ta.index;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.List;
+
+/**
+ * SAX handler that turns the XHTML text Tika produces into fixed-size chunks as it arrives,
+ * so a document of any size is extracted with one chunk-sized buffer instead of one string
+ * holding the whole text.
+ * <p>
+ * Pages are delimited by the {@code <div class="page">} elements Tika's PDF and presentation
+ * parsers emit, and by form feeds in plain text. Within a page, leading whitespace is skipped
+ * and the text is cut every {@code chunkSize} characters; each chunk is trimmed and empty
+ * chunks are dropped.
+ * <p>
+ * Parsing stops with a {@link SAXException} when the thread is interrupted, which lets the
+ * indexer's per-file timeout abort a long extraction.
+ */
+class ChunkingContentHandler extends DefaultHandler {
+    private final String sourceFile;
+    private final String sourcePath;
+    private final int chunkSize;
+    private final List<DocChunk> out;
+    private final StringBuilder buffer;
+    private int page = 1;
+    private int pageDivs = 0;
+    private boolean atPageStart = true;
+    private int pageOffset = 0;   // chars of the current page seen so far
+    private int chunkOffset = 0;  // page offset of the first char in the buffer
+
+    ChunkingContentHandler(String sourceFile, String sourcePath, int chunkSize, List<DocChunk> out) {
+        this.sourceFile = sourceFile;
+        this.sourcePath = sourcePath;
+        this.chunkSize = chunkSize;
+        this.out = out;
+        this.buffer = new StringBuilder(chunkSize);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        if ("div".equals(localName) && "page".equals(atts.getValue("class"))) {
+            // text before the first page div belongs to page 1
+            if (pageDivs++ > 0) nextPage();
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new SAXException("Extraction interrupted: " + sourceFile);
+        }
+        for (int i = start; i < start + length; i++) {
+            char c = ch[i];
+            if (c == '\f') {
+                nextPage();
+            } else if (!atPageStart || !Character.isWhitespace(c)) {
+                atPageStart = false;
+                if (buffer.length() == 0) chunkOffset = pageOffset;
+                buffer.append(c);
+                if (buffer.length() == chunkSize) flush();
+            }
+            pageOffset++;
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        characters(ch, start, length);
+    }
+
+    /**
+     * Emit the last partial chunk. Safe to call more than once.
+     */
+    @Override
+    public void endDocument() {
+        flush();
+    }
+
+    private void nextPage() {
+        flush();
+        page++;
+        atPageStart = true;
+        pageOffset = 0;
+    }
+
+    private void flush() {
+        String chunk = buffer.toString().trim();
+        if (!chunk.isEmpty()) out.add(new DocChunk(sourceFile, sourcePath, page, chunkOffset, chunk));
+        buffer.setLength(0);
+    }
+}
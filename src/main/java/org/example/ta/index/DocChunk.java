@@ -1,16 +1,54 @@
 package org.example.ta.index;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
 /**
  * A chunk of text extracted from a course document.
  */
 public class DocChunk {
     public final String sourceFile;
+    /** Absolute path of the document; equal to {@link #sourceFile} for chunks built without one. */
+    public final String sourcePath;
     public final int pageNumber;
+    /** Character offset of the chunk within the extracted text of its page. */
+    public final int offset;
     public final String text;
+    private String id;
 
     public DocChunk(String sourceFile, int pageNumber, String text) {
+        this(sourceFile, sourceFile, pageNumber, 0, text);
+    }
+
+    public DocChunk(String sourceFile, String sourcePath, int pageNumber, int offset, String text) {
         this.sourceFile = sourceFile;
+        this.sourcePath = sourcePath;
         this.pageNumber = pageNumber;
+        this.offset = offset;
         this.text = text;
     }
-}
\ No newline at end of file
+
+    /**
+     * Content-addressed id: a hash of the source path, page, offset and text, so the same chunk
+     * gets the same id on every reindex and a changed chunk gets a new one.
+     *
+     * @return 32 hex characters (128 bits of SHA-256)
+     */
+    public String id() {
+        String cached = id;
+        if (cached == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update((sourcePath + '\0' + pageNumber + '\0' + offset + '\0').getBytes(StandardCharsets.UTF_8));
+                digest.update(text.getBytes(StandardCharsets.UTF_8));
+                cached = HexFormat.of().formatHex(digest.digest(), 0, 16);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // every JVM must provide SHA-256
+            }
+            id = cached;
+        }
+        return cached;
+    }
+}
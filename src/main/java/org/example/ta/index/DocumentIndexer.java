@@ -1,69 +1,279 @@
 package org.example.ta.index;
 
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.apache.tika.Tika;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.example.ta.retrieval.HashingEmbedder;
+import org.xml.sax.SAXException;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * Simple document indexer that uses Apache Tika to extract text and split it into chunks.
  * This is used to preprocess course materials for RAG retrieval.
+ * <p>
+ * Multiple files are ingested by a bounded pipeline: the calling thread walks the files and
+ * feeds a work queue, a fixed number of parser workers take files from it, and each result is
+ * handed to a thread-safe {@link ChunkSink}. A file that takes longer than the per-file timeout
+ * is given up on, so one pathological document cannot stall the rest of the batch.
  */
 public class DocumentIndexer {
+    private static final long DEFAULT_FILE_TIMEOUT_SECONDS = 120;
+    private static final int EMBED_BATCH_SIZE = 256;
+    // shared by all indexers and backed by the IDE's application pool, so an incremental update
+    // does not start threads of its own and none outlive the IDE
+    private static final ExecutorService EMBED_POOL = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+            "CourseTA embedder", Runtime.getRuntime().availableProcessors());
 
-    private final Tika tika = new Tika();
+    private final Tika tika = new Tika(); // the Tika facade is thread-safe, so workers share it
     private final int chunkSize = 800; // characters per chunk (configurable)
+    private final int workerCount;
+    private final long fileTimeoutSeconds;
+    private final HashingEmbedder embedder = new HashingEmbedder();
+
+    /**
+     * Indexer with one parser worker per available processor and a two-minute per-file timeout.
+     */
+    public DocumentIndexer() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_FILE_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * @param workerCount        Number of files parsed concurrently
+     * @param fileTimeoutSeconds Time after which the parse of a single file is abandoned
+     */
+    public DocumentIndexer(int workerCount, long fileTimeoutSeconds) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be at least 1: " + workerCount);
+        }
+        this.workerCount = workerCount;
+        this.fileTimeoutSeconds = fileTimeoutSeconds;
+    }
+
+    /**
+     * Receives the chunks of each file processed by {@link #indexFiles(Iterator, ChunkSink)}.
+     * It is called concurrently from the parser workers, so implementations must be thread-safe.
+     */
+    public interface ChunkSink {
+        /**
+         * @param file   The parsed file
+         * @param chunks Its chunks, empty if it has no text; null if it failed to parse or timed out
+         */
+        void accept(File file, List<DocChunk> chunks);
+    }
 
     /**
      * Recursively index all files in the given directory.
      */
     public List<DocChunk> indexDirectory(File dir) throws IOException {
+        List<File> files = new ArrayList<>();
+        Map<File, List<DocChunk>> results = new ConcurrentHashMap<>();
+        try (Stream<Path> walk = Files.walk(dir.toPath())) {
+            Iterator<File> walker = walk.filter(Files::isRegularFile).map(Path::toFile)
+                    .peek(files::add)
+                    .iterator();
+            indexFiles(walker, (file, fileChunks) -> {
+                if (fileChunks != null) results.put(file, fileChunks);
+            });
+        }
+        // concatenate in walk order so the chunk ids do not depend on thread timing
         List<DocChunk> chunks = new ArrayList<>();
-        Files.walk(dir.toPath())
-                .filter(Files::isRegularFile)
-                .forEach(p -> {
-                    try {
-                        indexFile(p.toFile(), chunks);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                });
+        for (File file : files) {
+            chunks.addAll(results.getOrDefault(file, List.of()));
+        }
         return chunks;
     }
 
     /**
-     * Parse a file using Apache Tika and split its text content into chunks.
+     * Parse files in parallel. The calling thread acts as the walker: it pulls files from
+     * {@code files} and blocks while the work queue is full, so a huge directory is never
+     * listed ahead of the parsers. Returns once every file has been handed to the sink.
+     * <p>
+     * A file still parsing after the timeout is reported as failed and its worker is
+     * interrupted. Some parsers ignore interrupts, so a replacement worker is started and the
+     * stuck thread's eventual result is discarded.
+     *
+     * @param files The files to parse, consumed on the calling thread
+     * @param sink  Receives the chunks of every file exactly once, unless indexing is interrupted
+     * @throws InterruptedIOException If the calling thread is interrupted; files not yet
+     *                                reported to the sink are then not parsed
      */
-    private void indexFile(File file, List<DocChunk> out) throws IOException {
-        String text = "";
+    public void indexFiles(Iterator<File> files, ChunkSink sink) throws InterruptedIOException {
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(workerCount, workerCount, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(workerCount * 4), r -> {
+            Thread t = new Thread(r, "CourseTA parser-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, (task, executor) -> {
+            // a full queue blocks the walker instead of rejecting the file
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "CourseTA parser watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        Pending pending = new Pending();
+        try {
+            while (files.hasNext()) {
+                File file = files.next();
+                pending.increment();
+                workers.execute(() -> parse(file, sink, workers, watchdog, pending));
+            }
+            pending.awaitZero();
+        } catch (InterruptedException | RejectedExecutionException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Indexing was interrupted");
+            interrupted.initCause(e);
+            throw interrupted;
+        } finally {
+            workers.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Run on a worker: parse one file under a watchdog and report it, unless the watchdog
+     * reported it first.
+     */
+    private void parse(File file, ChunkSink sink, ThreadPoolExecutor workers,
+                       ScheduledExecutorService watchdog, Pending pending) {
+        Thread worker = Thread.currentThread();
+        FileTask task = new FileTask();
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            synchronized (task) {
+                if (task.done) return;
+                task.done = true;
+                task.timedOut = true;
+                // keep the configured parallelism while this worker may still be busy
+                synchronized (workers) {
+                    workers.setMaximumPoolSize(workers.getMaximumPoolSize() + 1);
+                    workers.setCorePoolSize(workers.getCorePoolSize() + 1);
+                }
+                worker.interrupt();
+            }
+            System.err.println("[Tika] Timed out after " + fileTimeoutSeconds + "s, will retry file: " + file.getName());
+            sink.accept(file, null);
+            pending.decrement();
+        }, fileTimeoutSeconds, TimeUnit.SECONDS);
+
+        List<DocChunk> chunks = new ArrayList<>();
+        boolean parsed = false;
         try {
-            text = tika.parseToString(file);
-        } catch (TikaException e) {
+            indexFile(file, chunks);
+            parsed = true;
+        } catch (IOException | RuntimeException e) {
             System.err.println("[Tika] Failed to parse file: " + file.getName());
             e.printStackTrace();
-            return;
+        } finally {
+            timeout.cancel(false);
+            boolean timedOut;
+            synchronized (task) {
+                timedOut = task.timedOut;
+                task.done = true;
+            }
+            // a watchdog interrupt must not leak into the next file
+            Thread.interrupted();
+            if (timedOut) {
+                // the replacement worker took over; shrink back now that this one is free
+                synchronized (workers) {
+                    workers.setCorePoolSize(workers.getCorePoolSize() - 1);
+                    workers.setMaximumPoolSize(workers.getMaximumPoolSize() - 1);
+                }
+            } else {
+                sink.accept(file, parsed ? chunks : null);
+                pending.decrement();
+            }
         }
+    }
 
-        // Naive page tracking: split by form feed or heuristics
-        String[] pages = text.split("\f");
-        for (int p = 0; p < pages.length; p++) {
-            String pageText = pages[p].trim();
-            for (int i = 0; i < pageText.length(); i += chunkSize) {
-                int end = Math.min(i + chunkSize, pageText.length());
-                String chunk = pageText.substring(i, end).trim();
-                if (!chunk.isEmpty()) {
-                    DocChunk dc = new DocChunk(file.getName(), p + 1, chunk);
-                    out.add(dc);
-                }
+    /**
+     * Completion state of one file, shared by its worker and the watchdog.
+     */
+    private static class FileTask {
+        boolean done;
+        boolean timedOut;
+    }
+
+    /**
+     * Number of files submitted but not yet reported to the sink.
+     */
+    private static class Pending {
+        private int count;
+
+        synchronized void increment() {
+            count++;
+        }
+
+        synchronized void decrement() {
+            if (--count == 0) notifyAll();
+        }
+
+        synchronized void awaitZero() throws InterruptedException {
+            while (count > 0) wait();
+        }
+    }
+
+    /**
+     * Parse a single file and return its chunks.
+     */
+    public List<DocChunk> indexFile(File file) throws IOException {
+        List<DocChunk> chunks = new ArrayList<>();
+        indexFile(file, chunks);
+        return chunks;
+    }
+
+    /**
+     * Parse a file using Apache Tika and split its text content into chunks while it is being
+     * extracted. Unlike {@code Tika.parseToString}, this has no write limit, so long documents
+     * are indexed to the end, and memory use does not grow with the document size.
+     *
+     * @throws IOException If the file cannot be read, or the parser failed before extracting any text
+     */
+    private void indexFile(File file, List<DocChunk> out) throws IOException {
+        ChunkingContentHandler handler = new ChunkingContentHandler(file.getName(), file.getAbsolutePath(), chunkSize, out);
+        Parser parser = tika.getParser();
+        ParseContext context = new ParseContext();
+        context.set(Parser.class, parser); // also extract text from embedded documents
+        try (TikaInputStream in = TikaInputStream.get(file.toPath())) {
+            parser.parse(in, new BodyContentHandler(handler), new Metadata(), context);
+        } catch (SAXException | TikaException e) {
+            // keep what was extracted before a failure, as a partial document is still searchable
+            handler.endDocument();
+            if (out.isEmpty()) {
+                throw new IOException("Cannot parse " + file.getName(), e);
             }
+            System.err.println("[Tika] Failed to parse file, keeping the text extracted so far: " + file.getName());
+            e.printStackTrace();
+            return;
         }
+        handler.endDocument();
     }
-    
+
     /**
      * Get a list of all files in a directory (non-recursive)
      */
@@ -100,31 +310,94 @@ public class DocumentIndexer {
      * 
      * @param chunks The document chunks to vectorize
      * @return A VectorStore containing the chunk vectors
+     * @throws IllegalStateException If embedding failed or was interrupted
      */
     public VectorStore createVectorStore(List<DocChunk> chunks) {
         VectorStore vectorStore = new VectorStore();
-        
-        for (DocChunk chunk : chunks) {
-            // Generate a simple vector representation based on term frequency
-            double[] vector = createSimpleVector(chunk.text);
-            
-            // Create a unique ID for this chunk
-            String id = UUID.randomUUID().toString();
-            
-            // Add to vector store
-            vectorStore.add(id, chunk, vector);
-        }
-        
+        embedInto(vectorStore, chunks);
         return vectorStore;
     }
+
+    /**
+     * Bring a store built from {@code previous} chunks up to date with {@code current} in place:
+     * chunks that disappeared are removed, and only chunks with ids not in the store are embedded.
+     *
+     * @return the number of chunks embedded
+     * @throws IllegalStateException If embedding failed or was interrupted; the store is then incomplete
+     */
+    public int updateVectorStore(VectorStore vectorStore, List<DocChunk> previous, List<DocChunk> current) {
+        Set<String> currentIds = new HashSet<>();
+        List<DocChunk> added = new ArrayList<>();
+        for (DocChunk chunk : current) {
+            if (currentIds.add(chunk.id()) && !vectorStore.contains(chunk.id())) added.add(chunk);
+        }
+        for (DocChunk chunk : previous) {
+            if (!currentIds.contains(chunk.id())) vectorStore.remove(chunk.id());
+        }
+        embedInto(vectorStore, added);
+        return added.size();
+    }
+
+    /**
+     * Embed the chunks in parallel and add them to the store.
+     *
+     * @throws IllegalStateException If embedding failed or was interrupted; the store is then
+     *                               missing vectors and must not be used
+     */
+    private void embedInto(VectorStore vectorStore, List<DocChunk> chunks) {
+        if (chunks.isEmpty()) return;
+        // embed one window of batches in parallel, then add it, so at most one window of
+        // vectors is held besides the store
+        int window = workerCount * EMBED_BATCH_SIZE;
+        double[][] vectors = new double[Math.min(window, chunks.size())][];
+        for (int start = 0; start < chunks.size(); start += window) {
+            int end = Math.min(start + window, chunks.size());
+            List<Future<?>> batches = new ArrayList<>();
+            for (int from = start; from < end; from += EMBED_BATCH_SIZE) {
+                int batchStart = from, batchEnd = Math.min(from + EMBED_BATCH_SIZE, end), base = start;
+                batches.add(EMBED_POOL.submit(() -> {
+                    for (int i = batchStart; i < batchEnd; i++) vectors[i - base] = embed(chunks.get(i).text);
+                }));
+            }
+            try {
+                for (Future<?> batch : batches) batch.get();
+            } catch (InterruptedException e) {
+                batches.forEach(batch -> batch.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Embedding was interrupted", e);
+            } catch (ExecutionException e) {
+                batches.forEach(batch -> batch.cancel(true));
+                throw new IllegalStateException("Embedding failed", e.getCause());
+            }
+            for (int i = start; i < end; i++) {
+                // Content-addressed, so a reindex produces the same ids for unchanged chunks
+                DocChunk chunk = chunks.get(i);
+                vectorStore.upsert(chunk.id(), chunk, vectors[i - start]);
+            }
+        }
+    }
+
+    /**
+     * Embed text with the hashed n-gram {@link HashingEmbedder}; chunks and queries must be
+     * embedded by the same method to be comparable.
+     *
+     * @param text The text to convert to a vector
+     * @return An L2-normalized vector of {@link HashingEmbedder#getDimension()} entries
+     */
+    public double[] embed(String text) {
+        return embedder.embed(text);
+    }
     
     /**
      * Create a simple vector representation of text based on character frequencies
      * This is a basic approach for demonstration purposes
      * 
+     * @deprecated Only counts ASCII characters; use {@link #embed(String)}
+     * 
      * @param text The text to convert to a vector
      * @return A vector representation of the text
      */
+    @Deprecated
     public double[] createSimpleVector(String text) {  // Changed from private to public
         // Using a simple approach - character frequency vector for ASCII characters
         double[] vector = new double[128]; // ASCII characters
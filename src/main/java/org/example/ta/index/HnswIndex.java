@@ -0,0 +1,427 @@
+package org.example.ta.index;
+
+import org.example.ta.util.TopKCollector;
+import org.example.ta.util.VectorKernels;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov and Yashunin) over the unit-length rows of a
+ * {@link VectorStore} matrix, giving approximate nearest neighbours in roughly logarithmic time.
+ * <p>
+ * Every node is on layer 0 and, with exponentially decreasing probability, on higher layers.
+ * A search descends greedily from the top layer and then runs a best-first search of width
+ * {@code efSearch} on layer 0. Nodes keep at most {@code m} links per upper layer and
+ * {@code 2 * m} on layer 0, chosen with the neighbour-diversity heuristic.
+ * <p>
+ * The graph does not copy vectors; every call receives the store's matrix. Inserts must not
+ * run concurrently with each other or with searches; concurrent searches are safe.
+ * <p>
+ * Nodes are never unlinked. Deleted rows stay in the graph as waypoints and are only filtered
+ * from the results; the store rebuilds the graph when it compacts its rows.
+ */
+final class HnswIndex {
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private int efSearch;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int[] levels = new int[16];
+    // layer-0 links of node n: links0[n * (maxM0 + 1)] is the count, followed by the neighbour ids
+    private int[] links0;
+    // links of node n on layer l >= 1, laid out as above with stride m + 1; null for layer-0-only nodes
+    private int[][] upperLinks = new int[16][];
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+    HnswIndex(int m, int efConstruction, int efSearch) {
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2: " + m);
+        }
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.links0 = new int[16 * (maxM0 + 1)];
+    }
+
+    /**
+     * @return an empty graph with the same parameters
+     */
+    HnswIndex emptyCopy() {
+        return new HnswIndex(m, efConstruction, efSearch);
+    }
+
+    /**
+     * @return a deep copy that can be extended without affecting this graph
+     */
+    HnswIndex copy() {
+        HnswIndex copy = new HnswIndex(m, efConstruction, efSearch);
+        copy.size = size;
+        copy.entryPoint = entryPoint;
+        copy.maxLevel = maxLevel;
+        copy.levels = levels.clone();
+        copy.links0 = links0.clone();
+        copy.upperLinks = new int[upperLinks.length][];
+        for (int node = 0; node < size; node++) {
+            if (upperLinks[node] != null) copy.upperLinks[node] = upperLinks[node].clone();
+        }
+        return copy;
+    }
+
+    int getEfSearch() {
+        return efSearch;
+    }
+
+    void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Link row {@code node} of the matrix into the graph. Rows must be inserted in order.
+     */
+    void insert(int node, float[] matrix, int dimension) {
+        if (node != size) {
+            throw new IllegalArgumentException("Rows must be inserted in order: expected " + size + ", got " + node);
+        }
+        if (node == levels.length) {
+            levels = Arrays.copyOf(levels, node * 2);
+            upperLinks = Arrays.copyOf(upperLinks, node * 2);
+            links0 = Arrays.copyOf(links0, node * 2 * (maxM0 + 1));
+        }
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        levels[node] = level;
+        if (level > 0) upperLinks[node] = new int[level * (m + 1)];
+        size++;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int offset = node * dimension;
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(matrix, offset, matrix, dimension, ep, l);
+        }
+        int[] entries = {ep};
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap results = searchLayer(matrix, offset, matrix, dimension, entries, efConstruction, l);
+            int n = results.size();
+            int[] found = new int[n];
+            float[] scores = new float[n];
+            // the heap pops worst first, so fill from the back to get best-first order
+            for (int i = n - 1; i >= 0; i--) {
+                scores[i] = results.topKey();
+                found[i] = results.pop();
+            }
+            int[] selected = selectNeighbors(found, scores, n, maxLinks(l), matrix, dimension);
+            setLinks(node, l, selected, selected.length);
+            for (int neighbour : selected) {
+                addLink(neighbour, node, l, matrix, dimension);
+            }
+            entries = found;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Offer the approximate nearest rows of {@code query} to {@code out}; at least
+     * {@code max(efSearch, k)} candidates are explored on layer 0, widened in proportion to the
+     * deleted rows so that about as many live candidates remain.
+     *
+     * @param deleted Rows to leave out of the results, or null
+     */
+    void search(float[] query, float[] matrix, int dimension, int k, BitSet deleted, TopKCollector out) {
+        if (entryPoint < 0) return;
+        int ep = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            ep = greedyClosest(query, 0, matrix, dimension, ep, l);
+        }
+        int ef = Math.max(efSearch, k);
+        if (deleted != null) {
+            int live = Math.max(1, size - deleted.cardinality());
+            ef = (int) Math.min(size, (long) ef * size / live);
+        }
+        NodeHeap results = searchLayer(query, 0, matrix, dimension, new int[]{ep}, ef, 0);
+        while (results.size() > 0) {
+            float score = results.topKey();
+            int node = results.pop();
+            if (deleted == null || !deleted.get(node)) out.offer(node, score);
+        }
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int greedyClosest(float[] q, int qOffset, float[] matrix, int dimension, int ep, int level) {
+        float best = VectorKernels.dot(q, qOffset, matrix, ep * dimension, dimension);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] links = links(ep, level);
+            int base = linkBase(ep, level);
+            for (int i = 1; i <= links[base]; i++) {
+                int candidate = links[base + i];
+                float score = VectorKernels.dot(q, qOffset, matrix, candidate * dimension, dimension);
+                if (score > best) {
+                    best = score;
+                    ep = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * Best-first search of one layer. Returns a min-heap of the {@code ef} best nodes found,
+     * so the worst of them is on top.
+     */
+    private NodeHeap searchLayer(float[] q, int qOffset, float[] matrix, int dimension,
+                                 int[] entries, int ef, int level) {
+        Visited seen = visited.get();
+        seen.reset(size);
+        NodeHeap candidates = new NodeHeap(); // keyed on -score, so the best candidate is on top
+        NodeHeap results = new NodeHeap();
+        for (int e : entries) {
+            if (seen.visit(e)) continue;
+            float score = VectorKernels.dot(q, qOffset, matrix, e * dimension, dimension);
+            candidates.push(e, -score);
+            results.push(e, score);
+            if (results.size() > ef) results.pop();
+        }
+        while (candidates.size() > 0) {
+            float score = -candidates.topKey();
+            int current = candidates.pop();
+            if (results.size() >= ef && score < results.topKey()) break;
+            int[] links = links(current, level);
+            int base = linkBase(current, level);
+            for (int i = 1; i <= links[base]; i++) {
+                int neighbour = links[base + i];
+                if (seen.visit(neighbour)) continue;
+                float s = VectorKernels.dot(q, qOffset, matrix, neighbour * dimension, dimension);
+                if (results.size() < ef || s > results.topKey()) {
+                    candidates.push(neighbour, -s);
+                    results.push(neighbour, s);
+                    if (results.size() > ef) results.pop();
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Neighbour-diversity heuristic: walking the candidates best-first, keep one only if it is
+     * closer to the base node than to every neighbour kept so far.
+     */
+    private int[] selectNeighbors(int[] candidates, float[] scores, int n, int max,
+                                  float[] matrix, int dimension) {
+        int[] selected = new int[Math.min(n, max)];
+        int count = 0;
+        for (int i = 0; i < n && count < max; i++) {
+            int c = candidates[i];
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (VectorKernels.dot(matrix, c * dimension, matrix, selected[j] * dimension, dimension) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) selected[count++] = c;
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    private void addLink(int node, int neighbour, int level, float[] matrix, int dimension) {
+        int[] links = links(node, level);
+        int base = linkBase(node, level);
+        int count = links[base];
+        if (count < maxLinks(level)) {
+            links[base + 1 + count] = neighbour;
+            links[base] = count + 1;
+            return;
+        }
+        // full: re-select among the current links and the new one
+        int[] candidates = new int[count + 1];
+        float[] scores = new float[count + 1];
+        int offset = node * dimension;
+        for (int i = 0; i <= count; i++) {
+            int c = i < count ? links[base + 1 + i] : neighbour;
+            candidates[i] = c;
+            scores[i] = VectorKernels.dot(matrix, offset, matrix, c * dimension, dimension);
+        }
+        sortByScoreDescending(candidates, scores);
+        int[] selected = selectNeighbors(candidates, scores, count + 1, maxLinks(level), matrix, dimension);
+        setLinks(node, level, selected, selected.length);
+    }
+
+    private static void sortByScoreDescending(int[] ids, float[] scores) {
+        // insertion sort: at most 2 * m + 1 entries
+        for (int i = 1; i < ids.length; i++) {
+            int id = ids[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = score;
+        }
+    }
+
+    private void setLinks(int node, int level, int[] neighbours, int count) {
+        int[] links = links(node, level);
+        int base = linkBase(node, level);
+        links[base] = count;
+        System.arraycopy(neighbours, 0, links, base + 1, count);
+    }
+
+    private int[] links(int node, int level) {
+        return level == 0 ? links0 : upperLinks[node];
+    }
+
+    private int linkBase(int node, int level) {
+        return level == 0 ? node * (maxM0 + 1) : (level - 1) * (m + 1);
+    }
+
+    /**
+     * Write the parameters and the links of every node.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(efSearch);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size; node++) {
+            out.writeInt(levels[node]);
+            for (int l = 0; l <= levels[node]; l++) {
+                int[] links = links(node, l);
+                int base = linkBase(node, l);
+                out.writeInt(links[base]);
+                for (int i = 1; i <= links[base]; i++) out.writeInt(links[base + i]);
+            }
+        }
+    }
+
+    static HnswIndex readFrom(ByteBuffer in) {
+        HnswIndex index = new HnswIndex(in.getInt(), in.getInt(), in.getInt());
+        int size = in.getInt();
+        index.entryPoint = in.getInt();
+        index.maxLevel = in.getInt();
+        int capacity = Math.max(16, size);
+        index.size = size;
+        index.levels = new int[capacity];
+        index.upperLinks = new int[capacity][];
+        index.links0 = new int[capacity * (index.maxM0 + 1)];
+        for (int node = 0; node < size; node++) {
+            int level = in.getInt();
+            index.levels[node] = level;
+            if (level > 0) index.upperLinks[node] = new int[level * (index.m + 1)];
+            for (int l = 0; l <= level; l++) {
+                int[] links = index.links(node, l);
+                int base = index.linkBase(node, l);
+                int count = in.getInt();
+                links[base] = count;
+                for (int i = 1; i <= count; i++) links[base + i] = in.getInt();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Binary min-heap of (node, key) pairs over primitive arrays.
+     */
+    private static final class NodeHeap {
+        private int[] nodes = new int[32];
+        private float[] keys = new float[32];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        float topKey() {
+            return keys[0];
+        }
+
+        void push(int node, float key) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) break;
+                nodes[i] = nodes[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            int node = nodes[--size];
+            float key = keys[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if (key <= keys[child]) break;
+                nodes[i] = nodes[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+            return top;
+        }
+    }
+
+    /**
+     * Visited marks reused across searches on one thread; bumping the epoch clears them in O(1).
+     */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int size) {
+            if (marks.length < size) marks = new int[Math.max(size, marks.length * 2)];
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return true if the node was already visited
+         */
+        boolean visit(int node) {
+            if (marks[node] == epoch) return true;
+            marks[node] = epoch;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package org.example.ta.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Brings an index up to date with the configured document directories by re-parsing only the
+ * files that are new or whose content changed since the previous {@link IndexManifest} was taken.
+ * Chunks of unchanged files are carried over and chunks of deleted files are dropped.
+ * <p>
+ * A file that fails to parse is not recorded as indexed: it keeps the manifest entry and chunks
+ * it had before, or stays out of the manifest if it is new, so the next update tries it again.
+ */
+public class IncrementalIndexer {
+
+    private final DocumentIndexer indexer;
+
+    public IncrementalIndexer(DocumentIndexer indexer) {
+        this.indexer = indexer;
+    }
+
+    /**
+     * Outcome of an update: the new manifest and chunk list plus what had to be done.
+     */
+    public static class Result {
+        public final IndexManifest manifest;
+        public final List<DocChunk> chunks;
+        /** For each chunk in {@link #chunks}, its index in the previous chunk list, or -1 if it is new. */
+        public final int[] previousChunkIds;
+        public final int parsedFiles;
+        public final int unchangedFiles;
+        public final int removedFiles;
+        /** Files that failed to parse or timed out; they are retried by the next update. */
+        public final int failedFiles;
+
+        public Result(IndexManifest manifest, List<DocChunk> chunks, int[] previousChunkIds,
+                      int parsedFiles, int unchangedFiles, int removedFiles, int failedFiles) {
+            this.manifest = manifest;
+            this.chunks = chunks;
+            this.previousChunkIds = previousChunkIds;
+            this.parsedFiles = parsedFiles;
+            this.unchangedFiles = unchangedFiles;
+            this.removedFiles = removedFiles;
+            this.failedFiles = failedFiles;
+        }
+
+        /**
+         * @return true if the chunk list differs from the previous one
+         */
+        public boolean hasChanges() {
+            return parsedFiles > 0 || removedFiles > 0;
+        }
+    }
+
+    /**
+     * Update the index for the given directories, checking every file in them.
+     *
+     * @param documentPaths  The configured document directories
+     * @param previous       The manifest of the current index, or null to index everything
+     * @param previousChunks The chunk list {@code previous} refers to
+     * @return The new manifest and chunks
+     * @throws IOException If a directory cannot be walked, or parsing is interrupted
+     */
+    public Result update(List<String> documentPaths, IndexManifest previous, List<DocChunk> previousChunks) throws IOException {
+        // a file reachable from two configured directories is indexed once
+        Set<File> files = new LinkedHashSet<>();
+        for (String path : documentPaths) {
+            File dir = new File(path);
+            if (dir.exists() && dir.isDirectory()) {
+                files.addAll(indexer.listAllFilesRecursively(dir));
+            }
+        }
+
+        Builder builder = new Builder(previous, previousChunks);
+        for (File file : files) {
+            builder.add(file);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Update the index for a set of paths reported as changed, e.g. by a file watcher. Files
+     * that are not affected are carried over without being looked at, so the cost depends on
+     * the size of the change only.
+     *
+     * @param changedPaths   Absolute paths of created, modified or deleted files or directories
+     * @param documentPaths  The configured document directories
+     * @param previous       The manifest of the current index
+     * @param previousChunks The chunk list {@code previous} refers to
+     * @return The new manifest and chunks
+     * @throws IOException If a created directory cannot be walked, or parsing is interrupted
+     */
+    public Result updateFiles(Collection<String> changedPaths, List<String> documentPaths,
+                              IndexManifest previous, List<DocChunk> previousChunks) throws IOException {
+        List<String> roots = new ArrayList<>();
+        for (String path : documentPaths) roots.add(new File(path).getAbsolutePath());
+
+        // files to look at again: existing files under a root, plus indexed files at or below a changed path
+        Set<File> affected = new LinkedHashSet<>();
+        for (String changed : changedPaths) {
+            File file = new File(changed).getAbsoluteFile();
+            if (!isUnder(file.getPath(), roots)) continue;
+            if (file.isFile()) {
+                affected.add(file);
+            } else if (file.isDirectory()) {
+                affected.addAll(indexer.listAllFilesRecursively(file));
+            }
+            for (IndexManifest.FileEntry e : previous.entries()) {
+                if (isUnder(e.path, List.of(file.getPath()))) affected.add(new File(e.path));
+            }
+        }
+
+        Builder builder = new Builder(previous, previousChunks);
+        for (IndexManifest.FileEntry e : previous.entries()) {
+            File file = new File(e.path);
+            if (affected.remove(file)) {
+                if (file.isFile() && isUnder(e.path, roots)) builder.add(file);
+            } else {
+                builder.carryOver(e);
+            }
+        }
+        for (File file : affected) {
+            if (file.isFile()) builder.add(file);
+        }
+        return builder.build();
+    }
+
+    private static boolean isUnder(String path, List<String> roots) {
+        for (String root : roots) {
+            if (path.equals(root) || path.startsWith(root.endsWith(File.separator) ? root : root + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Accumulates the new manifest and chunk list file by file. Files that need parsing are only
+     * queued by {@link #add(File)} and parsed together in {@link #build()}, so they go through
+     * the indexer's parallel pipeline; the chunk list is still assembled in the order files were added.
+     */
+    private class Builder {
+        private final IndexManifest previous;
+        private final List<DocChunk> previousChunks;
+        private final List<Slot> slots = new ArrayList<>();
+        private final Set<String> seen = new HashSet<>();
+
+        Builder(IndexManifest previous, List<DocChunk> previousChunks) {
+            this.previous = previous;
+            this.previousChunks = previousChunks;
+        }
+
+        /**
+         * Keep an entry of the previous manifest as is, without touching the file.
+         */
+        void carryOver(IndexManifest.FileEntry old) {
+            if (seen.add(old.path)) slots.add(new Slot(old.path, old.size, old.lastModified, old.contentHash, old, null, false));
+        }
+
+        /**
+         * Add a file, reusing its previous chunks unless its content changed.
+         */
+        void add(File file) {
+            String path = file.getAbsolutePath();
+            if (!seen.add(path)) return;
+            long size = file.length();
+            long lastModified = file.lastModified();
+            IndexManifest.FileEntry old = previous == null ? null : previous.get(path);
+
+            String hash;
+            if (old != null && old.size == size && old.lastModified == lastModified) {
+                hash = old.contentHash;
+            } else {
+                // only touched files are hashed; an unchanged hash means the file was merely re-saved
+                hash = contentHash(file);
+                if (hash == null) return;
+            }
+
+            boolean unchanged = old != null && old.contentHash.equals(hash);
+            slots.add(new Slot(path, size, lastModified, hash, unchanged ? old : null, unchanged ? null : file, true));
+        }
+
+        /**
+         * @throws InterruptedIOException If parsing is interrupted; nothing is returned then, so
+         *                                no partial manifest can be committed
+         */
+        Result build() throws InterruptedIOException {
+            List<File> toParse = new ArrayList<>();
+            for (Slot slot : slots) {
+                if (slot.parse != null) toParse.add(slot.parse);
+            }
+            Map<File, List<DocChunk>> parsedChunks = new ConcurrentHashMap<>();
+            if (!toParse.isEmpty()) {
+                indexer.indexFiles(toParse.iterator(), (file, fileChunks) -> {
+                    if (fileChunks != null) parsedChunks.put(file, fileChunks);
+                });
+            }
+
+            IndexManifest manifest = new IndexManifest();
+            List<DocChunk> chunks = new ArrayList<>();
+            int[] previousIds = new int[1024];
+            int parsed = 0, unchanged = 0, failed = 0;
+            for (Slot slot : slots) {
+                int first = chunks.size();
+                if (slot.parse != null && !parsedChunks.containsKey(slot.parse)) {
+                    // the previous entry no longer matches the file, so the next update parses it again
+                    IndexManifest.FileEntry old = previous == null ? null : previous.get(slot.path);
+                    if (old != null) {
+                        for (int i = old.firstChunk; i < old.firstChunk + old.chunkCount; i++) {
+                            previousIds = append(chunks, previousIds, previousChunks.get(i), i);
+                        }
+                        manifest.put(new IndexManifest.FileEntry(old.path, old.size, old.lastModified, old.contentHash,
+                                first, chunks.size() - first));
+                    }
+                    failed++;
+                    continue;
+                }
+                if (slot.reuse != null) {
+                    IndexManifest.FileEntry old = slot.reuse;
+                    for (int i = old.firstChunk; i < old.firstChunk + old.chunkCount; i++) {
+                        previousIds = append(chunks, previousIds, previousChunks.get(i), i);
+                    }
+                    if (slot.checked) unchanged++;
+                } else {
+                    for (DocChunk chunk : parsedChunks.get(slot.parse)) {
+                        previousIds = append(chunks, previousIds, chunk, -1);
+                    }
+                    parsed++;
+                }
+                manifest.put(new IndexManifest.FileEntry(slot.path, slot.size, slot.lastModified, slot.hash,
+                        first, chunks.size() - first));
+            }
+
+            int removed = 0;
+            if (previous != null) {
+                for (IndexManifest.FileEntry e : previous.entries()) {
+                    if (manifest.get(e.path) == null) removed++;
+                }
+            }
+            return new Result(manifest, chunks, Arrays.copyOf(previousIds, chunks.size()),
+                    parsed, unchanged, removed, failed);
+        }
+
+        private int[] append(List<DocChunk> chunks, int[] previousIds, DocChunk chunk, int previousId) {
+            if (chunks.size() == previousIds.length) previousIds = Arrays.copyOf(previousIds, chunks.size() * 2);
+            previousIds[chunks.size()] = previousId;
+            chunks.add(chunk);
+            return previousIds;
+        }
+    }
+
+    /**
+     * One file of the new index: either reuses the chunks of a previous entry or is parsed.
+     */
+    private static class Slot {
+        final String path;
+        final long size;
+        final long lastModified;
+        final String hash;
+        final IndexManifest.FileEntry reuse;
+        final File parse;
+        // false for entries carried over without looking at the file
+        final boolean checked;
+
+        Slot(String path, long size, long lastModified, String hash, IndexManifest.FileEntry reuse, File parse,
+             boolean checked) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.reuse = reuse;
+            this.parse = parse;
+            this.checked = checked;
+        }
+    }
+
+    /**
+     * SHA-256 of the file content as a hex string, or null if the file cannot be read.
+     */
+    static String contentHash(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            System.err.println("[Index] Cannot hash file: " + file.getName());
+            return null;
+        }
+    }
+}
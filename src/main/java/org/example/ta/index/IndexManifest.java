@@ -0,0 +1,116 @@
+package org.example.ta.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records, for every indexed file, the size, modification time and content hash it had when it
+ * was parsed, together with the range of chunk ids it produced. Comparing a manifest against the
+ * file system tells which files must be re-parsed on the next reindex.
+ * The manifest is stored inside the index snapshot, so it always agrees with the chunk ids there.
+ */
+public class IndexManifest {
+    private final Map<String, FileEntry> entries = new LinkedHashMap<>();
+
+    /**
+     * State of one indexed file. Its chunks are {@code [firstChunk, firstChunk + chunkCount)} in
+     * the chunk list the manifest was saved with.
+     */
+    public static class FileEntry {
+        public final String path;
+        public final long size;
+        public final long lastModified;
+        public final String contentHash;
+        public final int firstChunk;
+        public final int chunkCount;
+
+        public FileEntry(String path, long size, long lastModified, String contentHash, int firstChunk, int chunkCount) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.firstChunk = firstChunk;
+            this.chunkCount = chunkCount;
+        }
+    }
+
+    public void put(FileEntry entry) {
+        entries.put(entry.path, entry);
+    }
+
+    /**
+     * @return the entry for the absolute file path, or null if the file was not indexed
+     */
+    public FileEntry get(String path) {
+        return entries.get(path);
+    }
+
+    public Collection<FileEntry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(entries.size());
+        for (FileEntry e : entries.values()) {
+            writeString(out, e.path);
+            out.writeLong(e.size);
+            out.writeLong(e.lastModified);
+            writeString(out, e.contentHash);
+            out.writeInt(e.firstChunk);
+            out.writeInt(e.chunkCount);
+        }
+    }
+
+    static IndexManifest readFrom(ByteBuffer in) {
+        IndexManifest manifest = new IndexManifest();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            String path = readString(in);
+            long size = in.getLong();
+            long lastModified = in.getLong();
+            String hash = readString(in);
+            int firstChunk = in.getInt();
+            int chunkCount = in.getInt();
+            manifest.put(new FileEntry(path, size, lastModified, hash, firstChunk, chunkCount));
+        }
+        return manifest;
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeChunk(DataOutput out, DocChunk chunk) throws IOException {
+        writeString(out, chunk.sourceFile);
+        writeString(out, chunk.sourcePath);
+        out.writeInt(chunk.pageNumber);
+        out.writeInt(chunk.offset);
+        writeString(out, chunk.text);
+    }
+
+    static DocChunk readChunk(ByteBuffer in) {
+        String sourceFile = readString(in);
+        String sourcePath = readString(in);
+        int pageNumber = in.getInt();
+        int offset = in.getInt();
+        return new DocChunk(sourceFile, sourcePath, pageNumber, offset, readString(in));
+    }
+}
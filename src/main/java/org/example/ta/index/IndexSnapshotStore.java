@@ -0,0 +1,196 @@
+package org.example.ta.index;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.example.ta.retrieval.Analyzer;
+import org.example.ta.retrieval.SimpleRetriever;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.example.ta.index.IndexManifest.readChunk;
+import static org.example.ta.index.IndexManifest.readString;
+import static org.example.ta.index.IndexManifest.writeChunk;
+import static org.example.ta.index.IndexManifest.writeString;
+
+/**
+ * Persists the chunk list, the {@link IndexManifest}, the retrieval index and the chunk embeddings to a versioned binary
+ * snapshot in the plugin's config directory, next to the {@link IndexFileManager} paths file.
+ * Loading reads the file into one heap buffer and bulk-copies the arrays, so the tool window can
+ * answer questions on startup without re-parsing any document, and no mapping of the old file is
+ * left open when the next save replaces it.
+ * <p>
+ * A snapshot holds the whole index, so updates do not write one each: {@link #saveLater} keeps
+ * the latest index and writes it once no update arrived for {@link #SAVE_DELAY_SECONDS}, or on
+ * {@link #close()}. An index lost to a crash in between is brought up to date by the startup
+ * check, which re-parses only the files changed since the saved manifest.
+ */
+public class IndexSnapshotStore {
+    private static final Logger LOG = Logger.getInstance(IndexSnapshotStore.class);
+    private static final String SNAPSHOT_FILE_NAME = "index-snapshot.bin";
+    private static final int MAGIC = 0x43544958; // "CTIX"
+    // bump whenever the layout written by save(), SimpleRetriever.writeTo() or VectorStore.writeTo() changes
+    private static final int FORMAT_VERSION = 5;
+    private static final long SAVE_DELAY_SECONDS = 30;
+
+    private final File snapshotFile;
+    private final ScheduledExecutorService saver =
+            AppExecutorUtil.createBoundedScheduledExecutorService("CourseTA index snapshot", 1);
+    private final Object saveLock = new Object();
+    // the latest index not written yet and its pending write; guarded by saveLock
+    private Snapshot unsaved;
+    private ScheduledFuture<?> scheduledSave;
+
+    public IndexSnapshotStore() {
+        String configPath = PathManager.getConfigPath();
+        this.snapshotFile = new File(configPath, SNAPSHOT_FILE_NAME);
+    }
+
+    /**
+     * A restored index: the document paths and files it was built from, the chunks and the
+     * retriever and vector store built over them.
+     */
+    public static class Snapshot {
+        public final List<String> documentPaths;
+        public final IndexManifest manifest;
+        public final List<DocChunk> chunks;
+        public final SimpleRetriever retriever;
+        public final VectorStore vectors;
+
+        public Snapshot(List<String> documentPaths, IndexManifest manifest, List<DocChunk> chunks,
+                        SimpleRetriever retriever, VectorStore vectors) {
+            this.documentPaths = documentPaths;
+            this.manifest = manifest;
+            this.chunks = chunks;
+            this.retriever = retriever;
+            this.vectors = vectors;
+        }
+    }
+
+    /**
+     * Write the snapshot once no newer one was passed for a while, replacing any snapshot still
+     * waiting to be written. The snapshot's objects must not be modified afterwards.
+     */
+    public void saveLater(Snapshot snapshot) {
+        synchronized (saveLock) {
+            unsaved = snapshot;
+            if (scheduledSave != null) scheduledSave.cancel(false);
+            scheduledSave = saver.schedule(this::flush, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Write the snapshot passed to {@link #saveLater} now, if it has not been written yet.
+     */
+    public void flush() {
+        Snapshot snapshot;
+        synchronized (saveLock) {
+            snapshot = unsaved;
+            unsaved = null;
+            if (scheduledSave != null) scheduledSave.cancel(false);
+            scheduledSave = null;
+        }
+        if (snapshot != null) {
+            save(snapshot.documentPaths, snapshot.manifest, snapshot.chunks, snapshot.retriever, snapshot.vectors);
+        }
+    }
+
+    /**
+     * Write the pending snapshot and stop the background writer.
+     */
+    public void close() {
+        flush();
+        saver.shutdown();
+    }
+
+    /**
+     * Write a snapshot of the index built from the given document paths. The file is written
+     * next to the old one and then moved over it, so a crash never leaves a truncated snapshot.
+     *
+     * @param documentPaths The configured document paths the index was built from
+     * @param manifest      The per-file state, with chunk ids referring to {@code chunks}
+     * @param chunks        The indexed chunks, in retriever order
+     * @param retriever     The retriever built over {@code chunks}
+     * @param vectors       The embeddings of {@code chunks}
+     */
+    public synchronized void save(List<String> documentPaths, IndexManifest manifest, List<DocChunk> chunks,
+                                  SimpleRetriever retriever, VectorStore vectors) {
+        File tmp = new File(snapshotFile.getParentFile(), SNAPSHOT_FILE_NAME + ".tmp");
+        try {
+            if (!snapshotFile.getParentFile().exists()) {
+                snapshotFile.getParentFile().mkdirs();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(documentPaths.size());
+                for (String path : documentPaths) writeString(out, path);
+                manifest.writeTo(out);
+                out.writeInt(chunks.size());
+                for (DocChunk chunk : chunks) {
+                    writeChunk(out, chunk);
+                }
+                retriever.writeTo(out);
+                vectors.writeTo(out);
+            }
+            Files.move(tmp.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            LOG.warn("Cannot save the index snapshot to " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * Load the snapshot if it exists and has the current format version. Callers should compare
+     * {@link Snapshot#documentPaths} with the configured paths before serving queries from it.
+     *
+     * @param scoring  The ranking mode for the restored retriever
+     * @param analyzer The analyzer queries will use; it must match the one the index was built with
+     * @return The restored snapshot, or null if there is no usable snapshot
+     */
+    public Snapshot load(SimpleRetriever.Scoring scoring, Analyzer analyzer) {
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) throw new EOFException("Snapshot ended early");
+            }
+            in.flip();
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int pathCount = in.getInt();
+            List<String> builtFrom = new ArrayList<>(pathCount);
+            for (int i = 0; i < pathCount; i++) builtFrom.add(readString(in));
+            IndexManifest manifest = IndexManifest.readFrom(in);
+            int chunkCount = in.getInt();
+            List<DocChunk> chunks = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                chunks.add(readChunk(in));
+            }
+            SimpleRetriever retriever = SimpleRetriever.readFrom(in, chunks, scoring, analyzer);
+            VectorStore vectors = VectorStore.readFrom(in, chunks);
+            return new Snapshot(builtFrom, manifest, chunks, retriever, vectors);
+        } catch (IOException | RuntimeException e) {
+            // a corrupt or incompatible snapshot only costs a full reindex
+            LOG.info("Ignoring unreadable index snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.ta.index;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the knowledge-base directories through the IntelliJ virtual file system and reports
+ * which files were created, modified, moved or deleted, so the index can be updated for just
+ * those files instead of rescanning every directory.
+ * <p>
+ * Events are debounced: a burst of changes (copying a folder of slides, an editor saving several
+ * times) is delivered as one batch once no new event arrived for {@link #DEBOUNCE_MS}.
+ * The listener is called on a single background thread, never on the EDT.
+ */
+public class KnowledgeBaseWatcher implements Disposable {
+    private static final long DEBOUNCE_MS = 1500;
+
+    /**
+     * Receives the debounced changes.
+     */
+    public interface Listener {
+        /**
+         * @param paths Absolute, system-dependent paths of the changed files or directories
+         */
+        void filesChanged(Set<String> paths);
+    }
+
+    private final Listener listener;
+    private final ScheduledExecutorService scheduler =
+            AppExecutorUtil.createBoundedScheduledExecutorService("CourseTA index watcher", 1);
+    private final Object lock = new Object();
+    // all guarded by lock
+    private List<String> roots = List.of();
+    private Set<LocalFileSystem.WatchRequest> watchRequests = Set.of();
+    private final Set<String> pending = new LinkedHashSet<>();
+    private ScheduledFuture<?> flush;
+
+    public KnowledgeBaseWatcher(Listener listener) {
+        this.listener = listener;
+        ApplicationManager.getApplication().getMessageBus().connect(this)
+                .subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+                    @Override
+                    public void after(List<? extends VFileEvent> events) {
+                        onEvents(events);
+                    }
+                });
+    }
+
+    /**
+     * Replace the watched directories. Their children are loaded into the VFS in the background,
+     * since the VFS only reports changes under directories it has already seen.
+     *
+     * @param documentPaths The configured document directories
+     */
+    public void watch(List<String> documentPaths) {
+        List<String> normalized = new ArrayList<>();
+        for (String path : documentPaths) {
+            normalized.add(FileUtil.toSystemIndependentName(new File(path).getAbsolutePath()));
+        }
+        synchronized (lock) {
+            watchRequests = LocalFileSystem.getInstance().replaceWatchedRoots(watchRequests, normalized, null);
+            roots = normalized;
+        }
+        scheduler.execute(() -> {
+            for (String path : normalized) {
+                VirtualFile root = LocalFileSystem.getInstance().refreshAndFindFileByPath(path);
+                if (root != null) VfsUtil.markDirtyAndRefresh(true, true, true, root);
+            }
+        });
+    }
+
+    private void onEvents(List<? extends VFileEvent> events) {
+        synchronized (lock) {
+            if (roots.isEmpty()) return;
+            boolean watched = false;
+            for (VFileEvent event : events) {
+                watched |= addIfWatched(event.getPath());
+                // the old location of a moved or renamed file must be dropped from the index too
+                if (event instanceof VFileMoveEvent move) {
+                    watched |= addIfWatched(move.getOldPath());
+                } else if (event instanceof VFilePropertyChangeEvent change && change.isRename()) {
+                    watched |= addIfWatched(change.getOldPath());
+                }
+            }
+            if (!watched) return;
+            // every event restarts the wait, including one for a path already pending
+            if (flush != null) flush.cancel(false);
+            flush = scheduler.schedule(this::flush, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return true if the path is under a watched root
+     */
+    private boolean addIfWatched(String path) {
+        for (String root : roots) {
+            if (FileUtil.isAncestor(root, path, false)) {
+                pending.add(FileUtil.toSystemDependentName(path));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flush() {
+        Set<String> batch;
+        synchronized (lock) {
+            batch = new LinkedHashSet<>(pending);
+            pending.clear();
+            flush = null;
+        }
+        if (batch.isEmpty()) return;
+        try {
+            listener.filesChanged(batch);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (lock) {
+            LocalFileSystem.getInstance().removeWatchedRoots(watchRequests);
+            watchRequests = Set.of();
+            roots = List.of();
+            pending.clear();
+            if (flush != null) flush.cancel(false);
+        }
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,263 @@
+package org.example.ta.index;
+
+import org.example.ta.util.TopKCollector;
+import org.example.ta.util.VectorKernels;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Int8 scalar-quantized storage for the unit-length rows of a {@link VectorStore}. Each row is
+ * scaled by its largest absolute component to [-127, 127] and kept as one byte per dimension
+ * plus one float scale, a quarter of the float32 matrix and an eighth of a double[] per chunk.
+ * <p>
+ * Searches use asymmetric distance computation: the query stays in float and is multiplied
+ * directly with the codes, so only the stored side carries quantization error. Optionally the
+ * full-precision rows are appended to a file, and the best {@code rerankDepth} candidates of
+ * the quantized scan are re-scored exactly from it before the top k are returned.
+ * <p>
+ * The file is append-only: {@link #compact} drops rows from memory only, and the compacted
+ * instance shares the file with the original and keeps pointing at the surviving rows in it.
+ * The file is closed when the last instance sharing it is closed.
+ */
+final class QuantizedVectors implements Closeable {
+    private byte[] codes = new byte[0];
+    private float[] scales = new float[16];
+    // fileRows[row] is the position of the row's full-precision copy in the file
+    private int[] fileRows = new int[16];
+    private int rows;
+    private int dimension;
+    private final FullPrecisionFile file;
+    private final int rerankDepth;
+
+    /**
+     * @param fullPrecisionFile File receiving the float32 rows for re-ranking, or null to disable re-ranking
+     * @param rerankDepth       Number of quantized candidates re-scored exactly
+     * @param truncate          Start a new file rather than reopen the rows of a reloaded store
+     */
+    QuantizedVectors(File fullPrecisionFile, int rerankDepth, boolean truncate) throws IOException {
+        this(fullPrecisionFile == null ? null : new FullPrecisionFile(fullPrecisionFile, truncate), rerankDepth);
+    }
+
+    private QuantizedVectors(FullPrecisionFile file, int rerankDepth) {
+        this.file = file;
+        this.rerankDepth = rerankDepth;
+    }
+
+    /**
+     * Quantize and append a unit-length row.
+     */
+    void add(float[] row) {
+        dimension = row.length;
+        if ((rows + 1) * dimension > codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(16 * dimension, codes.length * 2));
+        }
+        ensureRowCapacity();
+
+        float max = 0f;
+        for (float v : row) max = Math.max(max, Math.abs(v));
+        float scale = max / 127f;
+        int offset = rows * dimension;
+        for (int i = 0; i < dimension; i++) {
+            codes[offset + i] = scale == 0 ? 0 : (byte) Math.round(row[i] / scale);
+        }
+        scales[rows] = scale;
+
+        if (file != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asFloatBuffer().put(row);
+            try {
+                fileRows[rows] = file.append(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        rows++;
+    }
+
+    /**
+     * Append row {@code row} of {@code source}, which must share this instance's file.
+     */
+    void appendFrom(QuantizedVectors source, int row) {
+        dimension = source.dimension;
+        if ((rows + 1) * dimension > codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(16 * dimension, codes.length * 2));
+        }
+        ensureRowCapacity();
+        System.arraycopy(source.codes, row * dimension, codes, rows * dimension, dimension);
+        scales[rows] = source.scales[row];
+        fileRows[rows] = source.fileRows[row];
+        rows++;
+    }
+
+    /**
+     * @param keep Rows to keep, in their new order
+     * @return a copy holding only the given rows, sharing this instance's file
+     */
+    QuantizedVectors compact(int[] keep) {
+        if (file != null) file.retain();
+        QuantizedVectors compacted = new QuantizedVectors(file, rerankDepth);
+        compacted.dimension = dimension;
+        compacted.codes = new byte[Math.max(16, keep.length) * dimension];
+        compacted.scales = new float[Math.max(16, keep.length)];
+        compacted.fileRows = new int[compacted.scales.length];
+        for (int row : keep) compacted.appendFrom(this, row);
+        return compacted;
+    }
+
+    /**
+     * @return an independent copy of all rows, sharing this instance's file
+     */
+    QuantizedVectors copy() {
+        int[] all = new int[rows];
+        for (int row = 0; row < rows; row++) all[row] = row;
+        return compact(all);
+    }
+
+    private void ensureRowCapacity() {
+        if (rows == scales.length) {
+            scales = Arrays.copyOf(scales, rows * 2);
+            fileRows = Arrays.copyOf(fileRows, rows * 2);
+        }
+    }
+
+    /**
+     * Offer the best rows for a unit-length query to {@code out}: an approximate score from the
+     * codes, replaced by the exact score when re-ranking is enabled.
+     *
+     * @param deleted Rows to skip, or null
+     */
+    void search(float[] query, int k, BitSet deleted, TopKCollector out) {
+        boolean rerank = file != null && rerankDepth > 0;
+        TopKCollector candidates = rerank ? new TopKCollector(Math.max(k, rerankDepth)) : out;
+        for (int row = 0, offset = 0; row < rows; row++, offset += dimension) {
+            if (deleted != null && deleted.get(row)) continue;
+            candidates.offer(row, scales[row] * VectorKernels.dot(query, 0, codes, offset, dimension));
+        }
+        if (!rerank) return;
+
+        int[] top = new int[candidates.size()];
+        double[] approximate = new double[top.length];
+        int n = candidates.drainTo(top, approximate);
+        float[] exact = new float[dimension];
+        ByteBuffer buffer = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < n; i++) {
+            try {
+                buffer.clear();
+                long position = (long) fileRows[top[i]] * dimension * Float.BYTES;
+                while (buffer.hasRemaining()) {
+                    if (file.channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+                }
+                buffer.flip();
+                buffer.asFloatBuffer().get(exact);
+                out.offer(top[i], VectorKernels.dot(query, exact));
+            } catch (IOException e) {
+                // an unreadable row keeps its approximate score
+                System.err.println("[Vector] Cannot re-rank row " + top[i] + ": " + e.getMessage());
+                out.offer(top[i], approximate[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the bytes of vector data held on the heap
+     */
+    long memoryBytes() {
+        return codes.length + (long) scales.length * (Float.BYTES + Integer.BYTES);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(rows);
+        out.writeInt(dimension);
+        out.write(codes, 0, rows * dimension);
+        for (int row = 0; row < rows; row++) out.writeFloat(scales[row]);
+        for (int row = 0; row < rows; row++) out.writeInt(fileRows[row]);
+        IndexManifest.writeString(out, file == null ? "" : file.path.getPath());
+        out.writeInt(file == null ? 0 : file.rows());
+        out.writeInt(rerankDepth);
+    }
+
+    /**
+     * Restore quantized rows written by {@link #writeTo}. Re-ranking stays enabled only if the
+     * full-precision file still exists.
+     */
+    static QuantizedVectors readFrom(ByteBuffer in) throws IOException {
+        int rows = in.getInt();
+        int dimension = in.getInt();
+        byte[] codes = new byte[rows * dimension];
+        in.get(codes);
+        float[] scales = new float[Math.max(16, rows)];
+        for (int row = 0; row < rows; row++) scales[row] = in.getFloat();
+        int[] fileRows = new int[scales.length];
+        for (int row = 0; row < rows; row++) fileRows[row] = in.getInt();
+        String path = IndexManifest.readString(in);
+        int fileRowCount = in.getInt();
+        int rerankDepth = in.getInt();
+        File file = path.isEmpty() ? null : new File(path);
+        QuantizedVectors vectors = new QuantizedVectors(file != null && file.isFile() ? file : null, rerankDepth, false);
+        if (vectors.file != null) vectors.file.setRows(fileRowCount);
+        vectors.codes = codes;
+        vectors.scales = scales;
+        vectors.fileRows = fileRows;
+        vectors.rows = rows;
+        vectors.dimension = dimension;
+        return vectors;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) file.release();
+    }
+
+    /**
+     * The full-precision rows on disk, shared by an instance and its compacted copies.
+     */
+    private static final class FullPrecisionFile {
+        final File path;
+        final FileChannel channel;
+        private int rows;
+        private int owners = 1;
+
+        FullPrecisionFile(File path, boolean truncate) throws IOException {
+            this.path = path;
+            if (truncate) {
+                this.channel = FileChannel.open(path.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } else {
+                this.channel = FileChannel.open(path.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+
+        /**
+         * Write one row at the end of the file; instances sharing the file may append concurrently.
+         *
+         * @return the row's position in the file
+         */
+        synchronized int append(ByteBuffer row) throws IOException {
+            long position = (long) rows * row.remaining();
+            while (row.hasRemaining()) position += channel.write(row, position);
+            return rows++;
+        }
+
+        synchronized int rows() {
+            return rows;
+        }
+
+        synchronized void setRows(int rows) {
+            this.rows = rows;
+        }
+
+        synchronized void retain() {
+            owners++;
+        }
+
+        synchronized void release() throws IOException {
+            if (--owners == 0) channel.close();
+        }
+    }
+}
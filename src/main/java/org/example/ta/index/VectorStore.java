@@ -1,27 +1,236 @@
 package org.example.ta.index;
 
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.example.ta.util.TopKCollector;
+import org.example.ta.util.VectorKernels;
+
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.example.ta.index.IndexManifest.readString;
+import static org.example.ta.index.IndexManifest.writeString;
 
 /**
  * A simple vector store implementation for storing and retrieving document chunks with their vector representations.
  * This is a basic implementation that stores vectors in memory.
+ * <p>
+ * Vectors are L2-normalized when added and stored as float32 rows of one contiguous matrix, so
+ * cosine similarity reduces to a dot product and a search is a single pass over one array.
+ * The dot products run on {@link VectorKernels}, which uses SIMD instructions when available.
+ * <p>
+ * For large stores an {@link HnswIndex} graph can be maintained alongside the matrix; searches
+ * then visit a small fraction of the rows and return approximate nearest neighbours, while
+ * {@link #searchExact(double[], int)} still scans everything.
+ * <p>
+ * To save memory the rows can instead be kept int8-quantized in a {@link QuantizedVectors},
+ * optionally re-ranked against full-precision copies on disk; the float matrix is then not kept.
+ * <p>
+ * Entries are keyed by id and can be replaced or removed in place. Rows are append-only:
+ * {@link #upsert} and {@link #remove} only mark the old row with a tombstone that searches skip.
+ * Once a quarter of the rows are dead, a background compaction copies the live rows (and
+ * rebuilds the graph) while reads and writes continue, then swaps them in. All methods are
+ * thread-safe.
+ * <p>
+ * Because rows are never rewritten, {@link #copy()} shares them: the copy and the original
+ * refer to the same row arrays and only get their own tombstones. The newest copy appends to
+ * the shared arrays past the rows the original can see, so updating a copy costs as much as the
+ * rows it adds; an original that is changed after being copied first takes its own arrays.
  */
-public class VectorStore {
-    private final Map<String, double[]> vectors = new HashMap<>();
-    private final Map<String, DocChunk> chunks = new HashMap<>();
-    private final List<String> ids = new ArrayList<>();
+public class VectorStore implements Closeable {
+    private static final double COMPACTION_RATIO = 0.25;
+    private static final int MIN_COMPACTION_ROWS = 256;
+    private static final ExecutorService COMPACTOR =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("CourseTA vector compaction", 1);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    // the fields below are guarded by lock; row r occupies matrix[r * dimension .. (r + 1) * dimension)
+    private float[] matrix = new float[0];
+    private int dimension = -1;
+    private DocChunk[] chunks = new DocChunk[0];
+    private String[] ids = new String[0];
+    private int rows;
+    // id -> the rows it was stored at, in increasing order; shared with copies, and only appended
+    // to by the store owning the tail of the row arrays. Each store reads it through liveRow.
+    private ConcurrentHashMap<String, int[]> rowsById = new ConcurrentHashMap<>();
+    // whether rows may be appended in place, i.e. no copy sees the arrays past our rows
+    private boolean ownsTail = true;
+    private BitSet deleted = new BitSet();
+    private int deletedCount;
+    private boolean compactionScheduled;
+    private HnswIndex hnsw;
+    private QuantizedVectors quantized;
+
+    /**
+     * Store searched by an exact scan.
+     */
+    public VectorStore() {
+        this(null, null);
+    }
+
+    /**
+     * Store searched through an HNSW graph that is extended on every {@link #add}.
+     *
+     * @param m              Links per node on the upper layers (twice as many on layer 0), e.g. 16
+     * @param efConstruction Candidate list size while inserting; higher builds a better graph more slowly
+     * @param efSearch       Candidate list size while searching; trades latency for recall
+     */
+    public VectorStore(int m, int efConstruction, int efSearch) {
+        this(new HnswIndex(m, efConstruction, efSearch), null);
+    }
+
+    /**
+     * Store keeping int8-quantized rows in memory, searched by an exact scan over the codes.
+     *
+     * @param fullPrecisionFile File the float32 rows are written to for re-ranking, or null for none
+     * @param rerankDepth       Number of best quantized candidates re-scored exactly, e.g. 4 * k
+     * @throws IOException If the file cannot be created
+     */
+    public VectorStore(File fullPrecisionFile, int rerankDepth) throws IOException {
+        this(null, new QuantizedVectors(fullPrecisionFile, rerankDepth, true));
+    }
+
+    private VectorStore(HnswIndex hnsw, QuantizedVectors quantized) {
+        this.hnsw = hnsw;
+        this.quantized = quantized;
+    }
 
     /**
      * Add a document chunk with its vector representation to the store
      * 
-     * @param id     Unique identifier for the chunk
+     * @param id     Unique identifier for the chunk; an entry with the same id is replaced
      * @param chunk  The document chunk
      * @param vector Vector representation of the chunk
      */
     public void add(String id, DocChunk chunk, double[] vector) {
-        ids.add(id);
-        chunks.put(id, chunk);
-        vectors.put(id, vector);
+        upsert(id, chunk, vector);
+    }
+
+    /**
+     * Add an entry, replacing the entry with the same id if there is one.
+     *
+     * @return true if an entry was replaced
+     */
+    public boolean upsert(String id, DocChunk chunk, double[] vector) {
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = vector.length;
+            } else if (vector.length != dimension) {
+                throw new IllegalArgumentException("Vectors must have the same dimensions");
+            }
+            float[] normalized = new float[dimension];
+            normalize(vector, normalized, 0);
+            int previous = liveRow(id);
+            appendRow(id, chunk, normalized);
+            if (previous >= 0) {
+                markDeleted(previous);
+                maybeScheduleCompaction();
+            }
+            return previous >= 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the entry with the given id.
+     *
+     * @return true if there was such an entry
+     */
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            int row = liveRow(id);
+            if (row < 0) return false;
+            markDeleted(row);
+            maybeScheduleCompaction();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copy the store without copying its rows: the copy shares them with this store, and takes
+     * over appending to them. Changing either store later does not affect the other. A graph or
+     * quantized codes are copied in full, as inserting into them changes existing entries.
+     *
+     * @return an independent store with the same entries
+     */
+    public VectorStore copy() {
+        lock.writeLock().lock();
+        try {
+            VectorStore copy = new VectorStore(hnsw == null ? null : hnsw.copy(),
+                    quantized == null ? null : quantized.copy());
+            copy.matrix = matrix;
+            copy.dimension = dimension;
+            copy.ids = ids;
+            copy.chunks = chunks;
+            copy.rows = rows;
+            copy.rowsById = rowsById;
+            copy.ownsTail = ownsTail;
+            copy.deleted = (BitSet) deleted.clone();
+            copy.deletedCount = deletedCount;
+            ownsTail = false;
+            return copy;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return liveRow(id) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of stored vectors, not counting removed or replaced ones
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the row holding the id in this store, or -1; the caller holds the lock
+     */
+    private int liveRow(String id) {
+        int[] stored = rowsById.get(id);
+        if (stored == null) return -1;
+        // rows past ours were appended by a copy; at most one of ours is not a tombstone
+        for (int i = stored.length - 1; i >= 0; i--) {
+            int row = stored[i];
+            if (row < rows && !deleted.get(row)) return row;
+        }
+        return -1;
+    }
+
+    /**
+     * Change the HNSW search width; has no effect on a store without a graph.
+     */
+    public void setEfSearch(int efSearch) {
+        lock.writeLock().lock();
+        try {
+            if (hnsw != null) hnsw.setEfSearch(efSearch);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -32,48 +241,374 @@ public class VectorStore {
      * @return List of scored chunks, sorted by similarity (highest first)
      */
     public List<ScoredChunk> search(double[] queryVector, int k) {
-        List<ScoredChunk> results = new ArrayList<>();
-        
-        for (String id : ids) {
-            double[] vector = vectors.get(id);
-            double similarity = cosineSimilarity(queryVector, vector);
-            results.add(new ScoredChunk(chunks.get(id), similarity, id));
+        lock.readLock().lock();
+        try {
+            if (hnsw == null) {
+                return searchExact(queryVector, k);
+            }
+            float[] query = normalizedQuery(queryVector);
+            TopKCollector collector = new TopKCollector(k);
+            hnsw.search(query, matrix, dimension, k, tombstones(), collector);
+            return toScoredChunks(collector);
+        } finally {
+            lock.readLock().unlock();
         }
-        
-        // Sort by similarity (descending)
-        results.sort((a, b) -> Double.compare(b.score, a.score));
-        
-        // Return top k results
-        return results.subList(0, Math.min(k, results.size()));
     }
 
     /**
-     * Calculate cosine similarity between two vectors
-     * 
-     * @param a First vector
-     * @param b Second vector
-     * @return Cosine similarity value between -1 and 1
+     * Same as {@link #search(double[], int)}, but always scans every row, so the result is exact
+     * even when an HNSW graph is maintained. For a quantized store the scan is over the codes,
+     * followed by the re-ranking if enabled.
      */
-    private double cosineSimilarity(double[] a, double[] b) {
-        if (a.length != b.length) {
+    public List<ScoredChunk> searchExact(double[] queryVector, int k) {
+        lock.readLock().lock();
+        try {
+            float[] query = normalizedQuery(queryVector);
+            TopKCollector collector = new TopKCollector(k);
+            BitSet skip = tombstones();
+            if (quantized != null) {
+                quantized.search(query, k, skip, collector);
+                return toScoredChunks(collector);
+            }
+            for (int row = 0, offset = 0; row < rows; row++, offset += dimension) {
+                if (skip != null && skip.get(row)) continue;
+                collector.offer(row, VectorKernels.dot(query, 0, matrix, offset, dimension));
+            }
+            return toScoredChunks(collector);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet tombstones() {
+        return deletedCount > 0 ? deleted : null;
+    }
+
+    private float[] normalizedQuery(double[] queryVector) {
+        if (rows > 0 && queryVector.length != dimension) {
             throw new IllegalArgumentException("Vectors must have the same dimensions");
         }
-        
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        
-        for (int i = 0; i < a.length; i++) {
-            dotProduct += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
+        // a zero query stays all zeros, which scores 0 against every row as before
+        float[] query = new float[queryVector.length];
+        normalize(queryVector, query, 0);
+        return query;
+    }
+
+    private List<ScoredChunk> toScoredChunks(TopKCollector collector) {
+        // Return top k results, sorted by similarity (descending)
+        int[] top = new int[collector.size()];
+        double[] scores = new double[top.length];
+        int n = collector.drainTo(top, scores);
+        List<ScoredChunk> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            results.add(new ScoredChunk(chunks[top[i]], scores[i], ids[top[i]]));
         }
-        
-        if (normA == 0 || normB == 0) {
-            return 0; // Return 0 similarity if either vector is zero
+        return results;
+    }
+
+    /**
+     * Append a normalized row to the current storage; the caller holds the write lock.
+     */
+    private int appendRow(String id, DocChunk chunk, float[] normalized) {
+        if (!ownsTail) takeOwnRows();
+        int row = rows;
+        if (quantized != null) {
+            quantized.add(normalized);
+        } else {
+            if ((row + 1) * dimension > matrix.length) {
+                matrix = Arrays.copyOf(matrix, Math.max(16 * dimension, matrix.length * 2));
+            }
+            System.arraycopy(normalized, 0, matrix, row * dimension, dimension);
         }
-        
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+        if (row == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(16, row * 2));
+            chunks = Arrays.copyOf(chunks, ids.length);
+        }
+        ids[row] = id;
+        chunks[row] = chunk;
+        rows++;
+        rowsById.merge(id, new int[]{row}, (stored, added) -> {
+            int[] extended = Arrays.copyOf(stored, stored.length + 1);
+            extended[stored.length] = row;
+            return extended;
+        });
+        if (hnsw != null) hnsw.insert(row, matrix, dimension);
+        return row;
+    }
+
+    /**
+     * Stop sharing the row arrays with the copy that took them over, before appending to them;
+     * the caller holds the write lock.
+     */
+    private void takeOwnRows() {
+        if (quantized == null) matrix = Arrays.copyOf(matrix, Math.max(16, rows) * Math.max(dimension, 0));
+        ids = Arrays.copyOf(ids, Math.max(16, rows));
+        chunks = Arrays.copyOf(chunks, ids.length);
+        rowsById = indexRows(ids, rows, deleted);
+        ownsTail = true;
+    }
+
+    private static ConcurrentHashMap<String, int[]> indexRows(String[] ids, int rows, BitSet deleted) {
+        ConcurrentHashMap<String, int[]> index = new ConcurrentHashMap<>(Math.max(16, rows * 4 / 3));
+        for (int row = 0; row < rows; row++) {
+            if (!deleted.get(row)) index.put(ids[row], new int[]{row});
+        }
+        return index;
+    }
+
+    private void markDeleted(int row) {
+        deleted.set(row);
+        deletedCount++;
+    }
+
+    private void maybeScheduleCompaction() {
+        if (!compactionScheduled && rows >= MIN_COMPACTION_ROWS
+                && deletedCount >= COMPACTION_RATIO * rows) {
+            compactionScheduled = true;
+            COMPACTOR.execute(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Drop the removed and replaced rows. The live rows that exist when the compaction starts are
+     * copied, and the graph rebuilt from them, without holding the lock, so searches and writes
+     * carry on meanwhile; writes made during the copy are replayed onto it when it is swapped in.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            int rowsAtStart;
+            int dim;
+            BitSet deletedAtStart;
+            float[] source;
+            HnswIndex graph;
+            lock.writeLock().lock();
+            try {
+                compactionScheduled = false;
+                if (deletedCount == 0) return;
+                rowsAtStart = rows;
+                dim = dimension;
+                deletedAtStart = (BitSet) deleted.clone();
+                // rows below rowsAtStart are never written again, so they can be read unlocked
+                source = matrix;
+                graph = hnsw == null ? null : hnsw.emptyCopy();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            int[] newRowOf = new int[rowsAtStart];
+            int live = 0;
+            for (int row = 0; row < rowsAtStart; row++) {
+                newRowOf[row] = deletedAtStart.get(row) ? -1 : live++;
+            }
+            int[] keep = new int[live];
+            for (int row = 0; row < rowsAtStart; row++) {
+                if (newRowOf[row] >= 0) keep[newRowOf[row]] = row;
+            }
+
+            float[] compactedMatrix = new float[0];
+            QuantizedVectors compactedCodes = null;
+            lock.readLock().lock();
+            try {
+                // cheap compared to the graph, and quantized storage may be reallocated by adds
+                if (quantized != null) compactedCodes = quantized.compact(keep);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (compactedCodes == null) {
+                compactedMatrix = new float[Math.max(16, live) * dim];
+                for (int i = 0; i < live; i++) {
+                    System.arraycopy(source, keep[i] * dim, compactedMatrix, i * dim, dim);
+                }
+                if (graph != null) {
+                    for (int i = 0; i < live; i++) graph.insert(i, compactedMatrix, dim);
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                swapIn(compactedMatrix, compactedCodes, graph, keep, newRowOf, rowsAtStart, deletedAtStart);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Make the compacted rows current, appending the rows added during the copy and carrying
+     * over the tombstones set during it; the caller holds the write lock.
+     */
+    private void swapIn(float[] compactedMatrix, QuantizedVectors compactedCodes, HnswIndex graph,
+                        int[] keep, int[] newRowOf, int rowsAtStart, BitSet deletedAtStart) {
+        float[] oldMatrix = matrix;
+        QuantizedVectors oldCodes = quantized;
+        String[] oldIds = ids;
+        DocChunk[] oldChunks = chunks;
+        int oldRows = rows;
+        BitSet oldDeleted = deleted;
+
+        BitSet newDeleted = new BitSet();
+        int capacity = Math.max(16, keep.length + oldRows - rowsAtStart);
+        String[] newIds = new String[capacity];
+        DocChunk[] newChunks = new DocChunk[capacity];
+        for (int i = 0; i < keep.length; i++) {
+            newIds[i] = oldIds[keep[i]];
+            newChunks[i] = oldChunks[keep[i]];
+            if (oldDeleted.get(keep[i])) newDeleted.set(i);
+        }
+        matrix = compactedMatrix;
+        quantized = compactedCodes;
+        hnsw = graph;
+        ids = newIds;
+        chunks = newChunks;
+        rows = keep.length;
+        // the compacted arrays are new, so nothing else sees them
+        ownsTail = true;
+        for (int row = rowsAtStart; row < oldRows; row++) {
+            int newRow = rows;
+            if (oldCodes != null) {
+                quantized.appendFrom(oldCodes, row);
+                ids[newRow] = oldIds[row];
+                chunks[newRow] = oldChunks[row];
+                rows++;
+            } else {
+                matrix = ensureMatrixCapacity(matrix, newRow + 1);
+                System.arraycopy(oldMatrix, row * dimension, matrix, newRow * dimension, dimension);
+                ids[newRow] = oldIds[row];
+                chunks[newRow] = oldChunks[row];
+                rows++;
+                if (hnsw != null) hnsw.insert(newRow, matrix, dimension);
+            }
+            if (oldDeleted.get(row)) newDeleted.set(newRow);
+        }
+        deleted = newDeleted;
+        deletedCount = newDeleted.cardinality();
+        if (oldCodes != null) {
+            try {
+                oldCodes.close(); // only gives up its share of the full-precision file
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        rowsById = indexRows(ids, rows, deleted);
+    }
+
+    private float[] ensureMatrixCapacity(float[] m, int rowCount) {
+        return rowCount * dimension > m.length ? Arrays.copyOf(m, Math.max(16, rowCount * 2) * dimension) : m;
+    }
+
+    /**
+     * Write {@code vector} scaled to unit length into {@code out} at {@code offset}; a zero vector
+     * is written as zeros.
+     */
+    private static void normalize(double[] vector, float[] out, int offset) {
+        double norm = 0.0;
+        for (double v : vector) norm += v * v;
+        double scale = norm == 0 ? 0 : 1.0 / Math.sqrt(norm);
+        for (int i = 0; i < vector.length; i++) {
+            out[offset + i] = (float) (vector[i] * scale);
+        }
+    }
+
+    /**
+     * @return the bytes of vector data held on the heap, excluding ids and chunks
+     */
+    public long vectorMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return quantized != null ? quantized.memoryBytes() : (long) matrix.length * Float.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Close the full-precision file of a quantized store.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (quantized != null) quantized.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write the tombstones, ids, vectors and, if present, the HNSW graph, so the store can be
+     * reloaded without re-embedding or rebuilding the graph. A quantized store writes its codes
+     * and the location of its full-precision file. The chunks themselves are not written: the
+     * snapshot already holds them, and {@link #readFrom} finds them again by id.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(rows);
+            out.writeInt(dimension);
+            long[] tombstones = deleted.toLongArray();
+            out.writeInt(tombstones.length);
+            for (long word : tombstones) out.writeLong(word);
+            for (int row = 0; row < rows; row++) writeString(out, ids[row]);
+            out.writeBoolean(quantized != null);
+            if (quantized != null) {
+                quantized.writeTo(out);
+                return;
+            }
+            for (int i = 0; i < rows * dimension; i++) out.writeFloat(matrix[i]);
+            out.writeBoolean(hnsw != null);
+            if (hnsw != null) hnsw.writeTo(out);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Restore a store written by {@link #writeTo}, taking the chunk of every live row from the
+     * chunks loaded with it rather than from a copy of its own. Deleted rows keep no chunk.
+     *
+     * @param chunks the chunks the store was saved with, looked up by {@link DocChunk#id()}
+     * @throws IOException if a live row has no chunk in {@code chunks}
+     */
+    public static VectorStore readFrom(ByteBuffer in, List<DocChunk> chunks) throws IOException {
+        int rows = in.getInt();
+        int dimension = in.getInt();
+        long[] tombstones = new long[in.getInt()];
+        for (int i = 0; i < tombstones.length; i++) tombstones[i] = in.getLong();
+        BitSet deleted = BitSet.valueOf(tombstones);
+        Map<String, DocChunk> chunksById = new HashMap<>(chunks.size() * 2);
+        for (DocChunk chunk : chunks) chunksById.put(chunk.id(), chunk);
+        String[] ids = new String[Math.max(16, rows)];
+        DocChunk[] rowChunks = new DocChunk[ids.length];
+        for (int row = 0; row < rows; row++) {
+            ids[row] = readString(in);
+            if (deleted.get(row)) continue;
+            rowChunks[row] = chunksById.get(ids[row]);
+            if (rowChunks[row] == null) throw new IOException("No chunk saved for vector " + ids[row]);
+        }
+        VectorStore store;
+        if (in.get() != 0) {
+            store = new VectorStore(null, QuantizedVectors.readFrom(in));
+        } else {
+            float[] matrix = new float[Math.max(rows * dimension, 0)];
+            in.asFloatBuffer().get(matrix);
+            in.position(in.position() + matrix.length * Float.BYTES);
+            store = new VectorStore(in.get() != 0 ? HnswIndex.readFrom(in) : null, null);
+            store.matrix = matrix;
+        }
+        store.ids = ids;
+        store.chunks = rowChunks;
+        store.rows = rows;
+        store.dimension = dimension;
+        store.deleted = deleted;
+        store.deletedCount = deleted.cardinality();
+        store.rowsById = indexRows(ids, rows, deleted);
+        return store;
     }
 
     /**
@@ -0,0 +1,164 @@
+package org.example.ta.llm;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application-wide entry point for calls to the language model. It owns the single
+ * {@link HttpClient} all requests go through, so the connection to OpenRouter (TLS handshake,
+ * HTTP/2 session) is set up once and multiplexed across questions, and it reads
+ * {@code model-config.json} once instead of on every request. It also owns the
+ * {@link LlmResponseCache} that answers repeated questions without calling the API, and one
+ * {@link RateLimiter} per model, configured under {@code "rateLimits"} in the model config:
+ * <pre>
+ * "rateLimits": {
+ *   "default": { "requestsPerMinute": 20, "burst": 4 },
+ *   "some/model": { "requestsPerMinute": 60, "burst": 10 }
+ * }
+ * </pre>
+ * <p>
+ * The tool window and the editor actions get their {@link OpenRouterClient}s from here.
+ */
+public final class LlmGateway {
+    private static final String DEFAULT_MODEL = "alibaba/tongyi-deepresearch-30b-a3b:free";
+    private static final String CACHE_DIRECTORY = "course-ta/answer-cache";
+    private static final int CACHE_MAX_ENTRIES = 5000;
+    private static final long CACHE_MAX_BYTES = 64L << 20;
+    // questions recur over a week of a course
+    private static final long CACHE_TTL_MILLIS = TimeUnit.DAYS.toMillis(7);
+    // OpenRouter's limit for free models
+    private static final double DEFAULT_REQUESTS_PER_MINUTE = 20;
+    private static final int DEFAULT_BURST = 4;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+    private final String apiKey = System.getenv("OPENROUTER_API_KEY");
+    private final String questionModel;
+    private final String refactorModel;
+    private final LlmResponseCache responseCache = new LlmResponseCache(
+            new File(PathManager.getSystemPath(), CACHE_DIRECTORY),
+            CACHE_MAX_ENTRIES, CACHE_MAX_BYTES, CACHE_TTL_MILLIS);
+    // one per model, shared by the clients asking it
+    private final Map<String, RateLimiter> limiters = new HashMap<>();
+    // created on first use; one per model, so identical requests in flight are joined
+    private OpenRouterClient questionClient;
+    private OpenRouterClient refactorClient;
+
+    public LlmGateway() {
+        JSONObject config = loadModelConfig();
+        this.questionModel = modelOrDefault(config, "questionModel");
+        this.refactorModel = modelOrDefault(config, "refactorModel");
+        JSONObject rateLimits = config.getJSONObject("rateLimits");
+        for (String model : List.of(questionModel, refactorModel)) {
+            limiters.computeIfAbsent(model, m -> newLimiter(rateLimits, m));
+        }
+    }
+
+    public static LlmGateway getInstance() {
+        return ApplicationManager.getApplication().getService(LlmGateway.class);
+    }
+
+    /**
+     * @return the cache of answers; tell it when the knowledge-base index changes
+     */
+    public LlmResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * @return true if the OPENROUTER_API_KEY environment variable is set
+     */
+    public boolean hasApiKey() {
+        return apiKey != null && !apiKey.isBlank();
+    }
+
+    /**
+     * @return the client for answering questions about the course materials
+     * @throws IllegalStateException If no API key is configured
+     */
+    public synchronized OpenRouterClient questionClient() {
+        if (questionClient == null) {
+            questionClient = newClient(questionModel);
+        }
+        return questionClient;
+    }
+
+    /**
+     * @return the client for refactoring code
+     * @throws IllegalStateException If no API key is configured
+     */
+    public synchronized OpenRouterClient refactorClient() {
+        if (refactorClient == null) {
+            refactorClient = newClient(refactorModel);
+        }
+        return refactorClient;
+    }
+
+    private OpenRouterClient newClient(String model) {
+        if (!hasApiKey()) {
+            throw new IllegalStateException("OPENROUTER_API_KEY is not set");
+        }
+        return new OpenRouterClient(http, apiKey, model, responseCache, limiters.get(model));
+    }
+
+    /**
+     * @return the limiter configured for the model, falling back to the "default" entry and
+     * then to the free-tier limit
+     */
+    private static RateLimiter newLimiter(JSONObject rateLimits, String model) {
+        JSONObject limit = null;
+        if (rateLimits != null) {
+            limit = rateLimits.getJSONObject(model);
+            if (limit == null) limit = rateLimits.getJSONObject("default");
+        }
+        double requestsPerMinute = DEFAULT_REQUESTS_PER_MINUTE;
+        int burst = DEFAULT_BURST;
+        if (limit != null) {
+            if (limit.containsKey("requestsPerMinute")) requestsPerMinute = limit.getDoubleValue("requestsPerMinute");
+            if (limit.containsKey("burst")) burst = limit.getIntValue("burst");
+        }
+        try {
+            return new RateLimiter(requestsPerMinute, burst);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[LLM] Invalid rate limit for " + model + ", using the default: " + e.getMessage());
+            return new RateLimiter(DEFAULT_REQUESTS_PER_MINUTE, DEFAULT_BURST);
+        }
+    }
+
+    /**
+     * 读取模型配置文件
+     *
+     * @return 配置内容，文件不存在或无法解析时为空对象
+     */
+    private static JSONObject loadModelConfig() {
+        try (InputStream is = LlmGateway.class.getClassLoader().getResourceAsStream("model-config.json")) {
+            if (is == null) {
+                return new JSONObject();
+            }
+            JSONObject config = JSON.parseObject(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+            return config != null ? config : new JSONObject();
+        } catch (Exception e) {
+            System.err.println("[LLM] Cannot read model-config.json, using the default model: " + e.getMessage());
+            return new JSONObject();
+        }
+    }
+
+    private static String modelOrDefault(JSONObject config, String key) {
+        String model = config.getString(key);
+        return model == null || model.isBlank() ? DEFAULT_MODEL : model;
+    }
+}
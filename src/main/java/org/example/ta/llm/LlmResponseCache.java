@@ -0,0 +1,247 @@
+package org.example.ta.llm;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Disk-backed cache of model answers, keyed by a hash of everything that determines the request:
+ * model, prompt, temperature and max_tokens. The prompt includes the retrieved course material,
+ * so a hit means the same question was asked against the same context.
+ * <p>
+ * Each answer is a file in the cache directory, so entries survive restarts. The index of
+ * entries is kept in memory in least-recently-used order; when the number of entries or their
+ * total size exceeds the bound, the least recently used are deleted. Entries expire after a
+ * time to live, and the whole cache is dropped when the knowledge-base index it was filled
+ * against changes (see {@link #setIndexVersion}).
+ * <p>
+ * The directory is read on first use rather than on construction, so creating the cache does
+ * no disk I/O, wherever the owning service happens to be created.
+ */
+public class LlmResponseCache {
+    private static final int MAGIC = 0x43545243; // "CTRC"
+    private static final String ENTRY_SUFFIX = ".answer";
+    private static final String INDEX_VERSION_FILE = "index-version";
+
+    private final File directory;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMillis;
+    // key -> entry, in access order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private String indexVersion;
+    private boolean loaded;
+
+    private static final class Entry {
+        final long createdAt;
+        final long bytes;
+
+        Entry(long createdAt, long bytes) {
+            this.createdAt = createdAt;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Open the cache in the given directory. The entries stored there are picked up on first use.
+     *
+     * @param directory  Where the answers are stored; created if missing
+     * @param maxEntries Maximum number of answers kept
+     * @param maxBytes   Maximum total size of the stored answers
+     * @param ttlMillis  How long an answer may be served after it was stored
+     */
+    public LlmResponseCache(File directory, int maxEntries, long maxBytes, long ttlMillis) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the cache key of a request
+     */
+    public static String key(String model, String prompt, double temperature, int maxTokens) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((model + '\0' + temperature + '\0' + maxTokens + '\0').getBytes(StandardCharsets.UTF_8));
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM must provide SHA-256
+        }
+    }
+
+    /**
+     * @return the stored answer, or null if there is none or it expired
+     */
+    public synchronized String get(String key) {
+        ensureLoaded();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+            remove(key);
+            return null;
+        }
+        File file = entryFile(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            readHeader(in);
+            byte[] answer = new byte[in.readInt()];
+            in.readFully(answer);
+            // keeps the recency order across restarts
+            file.setLastModified(System.currentTimeMillis());
+            return new String(answer, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("[LLM] Dropping unreadable cached answer: " + e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store an answer, evicting the least recently used ones if the cache is over its bounds.
+     */
+    public synchronized void put(String key, String answer) {
+        ensureLoaded();
+        byte[] bytes = answer.getBytes(StandardCharsets.UTF_8);
+        File file = entryFile(key);
+        File tmp = new File(directory, key + ".tmp");
+        long now = System.currentTimeMillis();
+        try {
+            directory.mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(now);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            System.err.println("[LLM] Cannot cache answer: " + e.getMessage());
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(now, file.length()));
+        if (previous != null) totalBytes -= previous.bytes;
+        totalBytes += file.length();
+        evict();
+    }
+
+    /**
+     * Tell the cache which knowledge-base index answers are generated against. If it differs
+     * from the index the stored answers were generated against, they are all deleted.
+     *
+     * @param version An identifier that changes whenever the indexed content changes
+     */
+    public synchronized void setIndexVersion(String version) {
+        ensureLoaded();
+        if (version.equals(indexVersion)) {
+            return;
+        }
+        if (indexVersion != null || !entries.isEmpty()) {
+            clear();
+        }
+        indexVersion = version;
+        try {
+            directory.mkdirs();
+            Files.writeString(new File(directory, INDEX_VERSION_FILE).toPath(), version);
+        } catch (IOException e) {
+            System.err.println("[LLM] Cannot record the cached index version: " + e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    /**
+     * Delete all stored answers.
+     */
+    public synchronized void clear() {
+        ensureLoaded();
+        for (String key : new ArrayList<>(entries.keySet())) {
+            remove(key);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue().bytes;
+            entryFile(entry.getKey()).delete();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) totalBytes -= entry.bytes;
+        entryFile(key).delete();
+    }
+
+    private File entryFile(String key) {
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    private static long readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a cached answer");
+        }
+        return in.readLong();
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            loaded = true;
+            load();
+        }
+    }
+
+    /**
+     * Rebuild the in-memory index from the directory, oldest access first, dropping expired and
+     * unreadable entries.
+     */
+    private void load() {
+        File versionFile = new File(directory, INDEX_VERSION_FILE);
+        try {
+            if (versionFile.isFile()) indexVersion = Files.readString(versionFile.toPath()).trim();
+        } catch (IOException e) {
+            indexVersion = null;
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX) || name.endsWith(".tmp"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(ENTRY_SUFFIX)) {
+                file.delete(); // left over from a crash while writing
+                continue;
+            }
+            long createdAt;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                createdAt = readHeader(in);
+            } catch (IOException e) {
+                file.delete();
+                continue;
+            }
+            if (now - createdAt > ttlMillis) {
+                file.delete();
+                continue;
+            }
+            entries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), new Entry(createdAt, file.length()));
+            totalBytes += file.length();
+        }
+        evict();
+    }
+}
@@ -5,52 +5,149 @@ import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Client for OpenRouter API with retry mechanism and proper error handling.
  * Supports free tier models and handles API rate limiting.
+ * <p>
+ * Every call has a {@link CompletableFuture}-returning variant built on
+ * {@link HttpClient#sendAsync}, with retries scheduled on a delayed executor, so waiting for the
+ * model does not occupy a thread. The blocking methods wait for those futures.
+ * <p>
+ * A request identical to one still in flight (same normalized body) does not go out again:
+ * the caller is attached to the pending call and receives the same result, and the same
+ * stream for streaming calls. Cancelling a caller's future detaches only that caller; the
+ * HTTP call is cancelled when no caller is left waiting for it.
+ * <p>
+ * With a {@link RateLimiter}, every attempt first waits for a token, queued by the
+ * {@link RequestPriority} of the client ({@link #withPriority}). A rate limit response pauses
+ * the limiter for its Retry-After, and retries back off exponentially with jitter so that
+ * clients that failed together do not retry together.
  */
 public class OpenRouterClient {
     private final String apiKey;
     private final String endpoint = "https://openrouter.ai/api/v1/chat/completions";
     private final HttpClient http;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    // serializes a body with sorted keys, so equal requests have equal keys
+    private static final ObjectMapper CANONICAL_MAPPER = JsonMapper.builder()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
     
     // Retry configuration
     private final int maxRetries = 3;
     private final long retryDelayMs = 1000;
+
+    // Sampling parameters of the answer requests
+    private static final double TEMPERATURE = 0.7;
+    private static final int MAX_TOKENS = 1000;
     
     // Model configuration
     private String model;
 
+    // Answers to earlier identical requests, or null
+    private final LlmResponseCache cache;
+
+    // Calls in flight by normalized request body; guards the waiter counts too
+    private final Map<String, InFlight<?>> inFlight;
+
+    // Limits the request rate to the model, or null; and this client's place in its queue
+    private final RateLimiter limiter;
+    private final RequestPriority priority;
+
     public OpenRouterClient(String apiKey) {
         this.apiKey = apiKey;
         this.http = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(30))
                 .build();
         this.model = loadModelConfig();
+        this.cache = null;
+        this.inFlight = new HashMap<>();
+        this.limiter = null;
+        this.priority = RequestPriority.INTERACTIVE;
     }
     
     public OpenRouterClient(String apiKey, String model) {
         this(apiKey);
         this.model = model;
     }
+
+    /**
+     * Client sending its requests through a shared {@link HttpClient}, so that connections
+     * opened by earlier calls are reused; see {@link LlmGateway}.
+     *
+     * @param http   The HTTP client to send requests with
+     * @param apiKey The OpenRouter API key
+     * @param model  The model to ask
+     * @param cache   Serves repeated answer requests without calling the API, or null
+     * @param limiter Limits the rate of requests to the model, or null
+     */
+    public OpenRouterClient(HttpClient http, String apiKey, String model, LlmResponseCache cache,
+                            RateLimiter limiter) {
+        this.apiKey = apiKey;
+        this.http = http;
+        this.model = model;
+        this.cache = cache;
+        this.inFlight = new HashMap<>();
+        this.limiter = limiter;
+        this.priority = RequestPriority.INTERACTIVE;
+    }
+
+    private OpenRouterClient(OpenRouterClient base, RequestPriority priority) {
+        this.apiKey = base.apiKey;
+        this.http = base.http;
+        this.model = base.model;
+        this.cache = base.cache;
+        this.inFlight = base.inFlight;
+        this.limiter = base.limiter;
+        this.priority = priority;
+    }
+
+    /**
+     * A view of this client whose requests wait for the rate limit with the given priority.
+     * It shares the cache and the calls in flight with this client; a request joining an
+     * identical call keeps the priority that call was started with.
+     */
+    public OpenRouterClient withPriority(RequestPriority priority) {
+        return priority == this.priority ? this : new OpenRouterClient(this, priority);
+    }
     
     /**
      * 从配置文件加载模型名称
@@ -91,11 +188,95 @@ public class OpenRouterClient {
      */
     public String generateAnswer(String question, List<String> contextChunks) 
             throws IOException, InterruptedException {
-        
+        return await(generateAnswerAsync(question, contextChunks));
+    }
+
+    /**
+     * Asynchronous version of {@link #generateAnswer}; no thread waits while the request is in
+     * flight or between retries.
+     *
+     * @return A future completed with the answer, or exceptionally with an {@link IOException}
+     */
+    public CompletableFuture<String> generateAnswerAsync(String question, List<String> contextChunks) {
         String prompt = buildPrompt(question, contextChunks);
-        return callApiWithRetry(prompt, false);
+        String cached = cachedAnswer(prompt);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return cacheAnswer(prompt, callApiAsync(createRequestBody(prompt, false, false), this::parseResponse));
     }
-    
+
+    /**
+     * Same as {@link #generateAnswer}, but the answer is streamed: text is passed to the listener
+     * as the model generates it, so the first words arrive after the model's first-token latency
+     * instead of after the whole generation.
+     *
+     * @param question The user's original question
+     * @param contextChunks Retrieved context chunks from the knowledge base
+     * @param listener Receives the answer in pieces, on an HTTP client thread
+     * @return The complete answer, equal to the concatenation of the pieces
+     * @throws IOException If an I/O error occurs
+     * @throws InterruptedException If the operation is interrupted
+     */
+    public String generateAnswerStreaming(String question, List<String> contextChunks, StreamListener listener)
+            throws IOException, InterruptedException {
+        return await(generateAnswerStreamingAsync(question, contextChunks, listener));
+    }
+
+    /**
+     * Asynchronous version of {@link #generateAnswerStreaming}.
+     *
+     * @return A future completed with the complete answer
+     */
+    public CompletableFuture<String> generateAnswerStreamingAsync(String question, List<String> contextChunks,
+                                                                  StreamListener listener) {
+        String prompt = buildPrompt(question, contextChunks);
+        String cached = cachedAnswer(prompt);
+        if (cached != null) {
+            // a cached answer arrives all at once
+            listener.onDelta(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+        return cacheAnswer(prompt, callApiStreamingAsync(createRequestBody(prompt, false, true), listener));
+    }
+
+    /**
+     * @return the cached answer to the prompt, or null
+     */
+    private String cachedAnswer(String prompt) {
+        if (cache == null) {
+            return null;
+        }
+        String answer = cache.get(LlmResponseCache.key(model, prompt, TEMPERATURE, MAX_TOKENS));
+        return answer == null || answer.isEmpty() ? null : answer;
+    }
+
+    /**
+     * Store the answer once the request succeeds.
+     *
+     * @return the request's future
+     */
+    private CompletableFuture<String> cacheAnswer(String prompt, CompletableFuture<String> answer) {
+        if (cache != null) {
+            String key = LlmResponseCache.key(model, prompt, TEMPERATURE, MAX_TOKENS);
+            answer.thenAccept(text -> {
+                if (!text.isBlank()) cache.put(key, text);
+            });
+        }
+        return answer;
+    }
+
+    /**
+     * Send a conversation as is and return the reply, with the model's default sampling
+     * parameters.
+     *
+     * @param messages The conversation, e.g. a system message followed by the user's request
+     * @return A future completed with the content of the reply
+     */
+    public CompletableFuture<String> chatAsync(List<Message> messages) {
+        return callApiAsync(createChatRequestBody(messages), this::parseResponse);
+    }
+
     /**
      * Generate an answer with reasoning enabled
      *
@@ -106,7 +287,14 @@ public class OpenRouterClient {
      */
     public ReasoningResponse generateAnswerWithReasoning(String question) 
             throws IOException, InterruptedException {
-        return callApiWithReasoning(question, false);
+        return await(generateAnswerWithReasoningAsync(question));
+    }
+
+    /**
+     * Asynchronous version of {@link #generateAnswerWithReasoning}.
+     */
+    public CompletableFuture<ReasoningResponse> generateAnswerWithReasoningAsync(String question) {
+        return callApiAsync(createReasoningRequestBody(question, false), this::parseReasoningResponse);
     }
     
     /**
@@ -119,7 +307,14 @@ public class OpenRouterClient {
      */
     public ReasoningResponse continueReasoning(List<Message> messages) 
             throws IOException, InterruptedException {
-        return callApiWithReasoningMessages(messages, true);
+        return await(continueReasoningAsync(messages));
+    }
+
+    /**
+     * Asynchronous version of {@link #continueReasoning}.
+     */
+    public CompletableFuture<ReasoningResponse> continueReasoningAsync(List<Message> messages) {
+        return callApiAsync(createReasoningRequestBodyFromMessages(messages, true), this::parseReasoningResponse);
     }
 
     /**
@@ -151,156 +346,493 @@ public class OpenRouterClient {
     }
 
     /**
-     * Call the OpenRouter API with retry mechanism
+     * Parses a successful response body.
+     */
+    @FunctionalInterface
+    private interface ResponseParser<T> {
+        T parse(String responseBody) throws IOException;
+    }
+
+    private HttpRequest buildRequest(String body, boolean stream) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint))
+                .timeout(Duration.ofSeconds(60)) // until the response headers; a stream itself may take longer
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .header("HTTP-Referer", "https://github.com/ta-plugin"); // Optional but recommended
+        if (stream) {
+            builder.header("Accept", "text/event-stream");
+        } else {
+            // a compressed event stream would be held back by the compressor's buffering
+            builder.header("Accept-Encoding", "gzip");
+        }
+        return builder.POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    /**
+     * Call the OpenRouter API with retry mechanism, without blocking. A rate limit, an error
+     * status, an I/O failure or an unparseable response is retried up to {@code maxRetries}
+     * times with exponential backoff; the waits are scheduled on a delayed executor instead of
+     * sleeping. An identical call in flight is joined instead of repeated. Cancelling the
+     * returned future cancels the request once no other caller is waiting for it.
      *
-     * @param prompt The prompt to send to the API
-     * @param isReasoning Whether to enable reasoning
-     * @return The API response
-     * @throws IOException If an I/O error occurs
-     * @throws InterruptedException If the operation is interrupted
+     * @param body The request body
+     * @param parser Extracts the result from a successful response
+     * @return A future completed with the parsed response
      */
-    private String callApiWithRetry(String prompt, boolean isReasoning) throws IOException, InterruptedException {
-        Exception lastException = null;
-        
-        for (int attempt = 0; attempt <= maxRetries; attempt++) {
-            try {
-                String body = createRequestBody(prompt, isReasoning);
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(endpoint))
-                        .timeout(Duration.ofSeconds(60))
-                        .header("Authorization", "Bearer " + apiKey)
-                        .header("Content-Type", "application/json")
-                        .header("HTTP-Referer", "https://github.com/ta-plugin") // Optional but recommended
-                        .POST(HttpRequest.BodyPublishers.ofString(body))
-                        .build();
-
-                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                    return parseResponse(response.body());
-                } else if (response.statusCode() == 429) {
-                    // Rate limited - wait and retry
-                    long delay = retryDelayMs * (1L << attempt); // Exponential backoff
-                    Thread.sleep(delay);
-                    continue;
-                } else if (response.statusCode() == 402) {
-                    // Payment required
-                    throw new IOException("API quota exceeded or payment required. Please check your account quota or upgrade your plan.");
-                } else {
-                    throw new IOException("OpenRouter API error: " + response.statusCode() + " - " + response.body());
+    private <T> CompletableFuture<T> callApiAsync(String body, ResponseParser<T> parser) {
+        // bodies of calls parsed differently always differ (reasoning calls ask for reasoning)
+        return coalesce(body, null, ignored -> {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            attempt(result, 0, () -> http.sendAsync(buildRequest(body, false), DECODED_STRING),
+                    parser, () -> true);
+            return result;
+        });
+    }
+
+    /**
+     * Call the OpenRouter API with {@code "stream": true} and parse the server-sent events as
+     * they arrive. A failed request is retried like in {@link #callApiAsync} only as long as no
+     * text has been passed to the listener; after that a retry would repeat it.
+     *
+     * @param body The request body, asking for a stream
+     * @param listener Receives each piece of the answer
+     * @return A future completed with the complete answer
+     */
+    private CompletableFuture<String> callApiStreamingAsync(String body, StreamListener listener) {
+        return coalesce(body, listener, broadcast -> {
+            AtomicBoolean delivered = new AtomicBoolean();
+            StreamListener tracking = text -> {
+                delivered.set(true);
+                broadcast.onDelta(text);
+            };
+            CompletableFuture<String> result = new CompletableFuture<>();
+            // a successful response's body is the answer, assembled while the events arrive
+            attempt(result, 0, () -> http.sendAsync(buildRequest(body, true), info -> info.statusCode() / 100 == 2
+                            ? new SseSubscriber(tracking).bodySubscriber()
+                            : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8)),
+                    responseBody -> responseBody, () -> !delivered.get());
+            return result;
+        });
+    }
+
+    /**
+     * A call shared by all callers that sent the same request while it was in flight.
+     */
+    private static final class InFlight<T> {
+        final String key;
+        // fans the stream out to the callers of a streaming call; null otherwise
+        final StreamBroadcast broadcast;
+        CompletableFuture<T> shared;
+        int waiters;
+
+        InFlight(String key, StreamBroadcast broadcast) {
+            this.key = key;
+            this.broadcast = broadcast;
+        }
+    }
+
+    /**
+     * Attach the caller to the identical call in flight, or start one.
+     *
+     * @param body     The request body
+     * @param listener The caller's stream listener for a streaming call, or null
+     * @param start    Starts the call; gets the listener for the shared stream, null if not streaming
+     * @return A future for this caller only, completed with the shared result
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> coalesce(String body, StreamListener listener,
+                                              Function<StreamListener, CompletableFuture<T>> start) {
+        String key = normalize(body);
+        InFlight<T> call;
+        synchronized (inFlight) {
+            call = (InFlight<T>) inFlight.get(key);
+            if (call == null) {
+                InFlight<T> started = new InFlight<>(key, listener != null ? new StreamBroadcast() : null);
+                // starting only initiates the exchange, so it is done holding the lock to keep
+                // identical callers from starting a second one meanwhile
+                started.shared = start.apply(started.broadcast);
+                inFlight.put(key, started);
+                started.shared.whenComplete((value, failure) -> {
+                    synchronized (inFlight) {
+                        inFlight.remove(key, started);
+                    }
+                });
+                call = started;
+            }
+            call.waiters++;
+        }
+        // outside the lock: joining mid-stream replays the text so far to the listener
+        if (listener != null) call.broadcast.add(listener);
+
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        call.shared.whenComplete((value, failure) -> {
+            if (failure == null) {
+                mine.complete(value);
+            } else {
+                mine.completeExceptionally(unwrap(failure));
+            }
+        });
+        InFlight<T> joined = call;
+        mine.whenComplete((value, failure) -> {
+            if (mine.isCancelled()) detach(joined, listener);
+        });
+        return mine;
+    }
+
+    /**
+     * Remove a caller that cancelled; cancel the call if it was the last one waiting.
+     */
+    private void detach(InFlight<?> call, StreamListener listener) {
+        boolean last;
+        synchronized (inFlight) {
+            if (listener != null) call.broadcast.remove(listener);
+            last = --call.waiters == 0;
+            if (last) inFlight.remove(call.key, call);
+        }
+        if (last) call.shared.cancel(true);
+    }
+
+    /**
+     * @return the body with its keys sorted and whitespace removed
+     */
+    private static String normalize(String body) {
+        try {
+            return CANONICAL_MAPPER.writeValueAsString(CANONICAL_MAPPER.readValue(body, Object.class));
+        } catch (IOException e) {
+            return body;
+        }
+    }
+
+    /**
+     * Passes a stream to every caller attached to it. A caller attaching mid-stream first gets
+     * the text streamed so far, in one piece.
+     * <p>
+     * Listeners are called without holding the lock, so a listener that blocks or calls back
+     * into the client cannot deadlock the stream. Each listener has its own position in the
+     * streamed text and only one thread at a time delivers to it, so every listener gets the
+     * text once and in order. {@link #onDelta} returns only once every listener has the text,
+     * so the answer is never completed before a listener has seen all of it.
+     */
+    private static final class StreamBroadcast implements StreamListener {
+        private final StringBuilder streamed = new StringBuilder();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+
+        private static final class Subscriber {
+            final StreamListener listener;
+            // length of the streamed text passed to the listener so far
+            int position;
+            boolean delivering;
+            boolean removed;
+
+            Subscriber(StreamListener listener) {
+                this.listener = listener;
+            }
+        }
+
+        @Override
+        public void onDelta(String text) {
+            List<Subscriber> current;
+            synchronized (this) {
+                streamed.append(text);
+                current = new ArrayList<>(subscribers);
+            }
+            for (Subscriber subscriber : current) deliver(subscriber, true);
+        }
+
+        void add(StreamListener listener) {
+            Subscriber subscriber = new Subscriber(listener);
+            synchronized (this) {
+                subscribers.add(subscriber);
+            }
+            deliver(subscriber, false);
+        }
+
+        synchronized void remove(StreamListener listener) {
+            for (Iterator<Subscriber> it = subscribers.iterator(); it.hasNext(); ) {
+                Subscriber subscriber = it.next();
+                if (subscriber.listener == listener) {
+                    subscriber.removed = true;
+                    it.remove();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Pass the text the subscriber has not seen yet.
+         *
+         * @param await Whether to wait for another thread delivering to the subscriber and then
+         *              pass on what it left; otherwise that thread is left to pass it on
+         */
+        private void deliver(Subscriber subscriber, boolean await) {
+            while (true) {
+                String pending;
+                synchronized (this) {
+                    try {
+                        while (await && subscriber.delivering) wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (subscriber.delivering || subscriber.removed || subscriber.position == streamed.length()) {
+                        return;
+                    }
+                    pending = streamed.substring(subscriber.position);
+                    subscriber.position = streamed.length();
+                    subscriber.delivering = true;
                 }
-            } catch (Exception e) {
-                lastException = e;
-                if (attempt < maxRetries) {
-                    long delay = retryDelayMs * (1L << attempt); // Exponential backoff
-                    Thread.sleep(delay);
+                try {
+                    subscriber.listener.onDelta(pending);
+                } finally {
+                    synchronized (this) {
+                        subscriber.delivering = false;
+                        notifyAll();
+                    }
                 }
             }
         }
-        
-        throw new IOException("Failed to get response from OpenRouter API after " + maxRetries + " retries", lastException);
     }
-    
+
+    private <T> void attempt(CompletableFuture<T> result, int attempt,
+                             Supplier<CompletableFuture<HttpResponse<String>>> send,
+                             ResponseParser<T> parser, BooleanSupplier retryable) {
+        if (result.isDone()) {
+            return; // cancelled while waiting to retry
+        }
+        if (limiter == null) {
+            send(result, attempt, send, parser, retryable);
+            return;
+        }
+        CompletableFuture<Void> permit = limiter.acquire(priority);
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) permit.cancel(false);
+        });
+        permit.thenRun(() -> send(result, attempt, send, parser, retryable));
+    }
+
+    private <T> void send(CompletableFuture<T> result, int attempt,
+                          Supplier<CompletableFuture<HttpResponse<String>>> send,
+                          ResponseParser<T> parser, BooleanSupplier retryable) {
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<HttpResponse<String>> exchange = send.get();
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) exchange.cancel(true);
+        });
+        exchange.whenComplete((response, failure) -> {
+            Throwable error = failure;
+            if (error == null) {
+                try {
+                    result.complete(parser.parse(checkStatus(response)));
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                }
+            }
+            error = unwrap(error);
+            long retryAfter = error instanceof RateLimitException limited ? limited.retryAfterMs : -1;
+            if (retryAfter >= 0 && limiter != null) {
+                // holds back every request to the model, not just the retry
+                limiter.pause(retryAfter);
+            }
+            if (!retryable.getAsBoolean()) {
+                result.completeExceptionally(error);
+            } else if (attempt >= maxRetries) {
+                result.completeExceptionally(new IOException(
+                        "Failed to get response from OpenRouter API after " + maxRetries + " retries", error));
+            } else {
+                long delay = backoff(attempt);
+                if (limiter == null) delay = Math.max(delay, retryAfter);
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                        .execute(() -> attempt(result, attempt + 1, send, parser, retryable));
+            }
+        });
+    }
+
     /**
-     * Call the OpenRouter API with reasoning enabled
-     *
-     * @param prompt The prompt to send to the API
-     * @param isContinue Whether this is a continuation of previous reasoning
-     * @return The API response with reasoning details
-     * @throws IOException If an I/O error occurs
-     * @throws InterruptedException If the operation is interrupted
+     * Exponential backoff with "equal jitter": half of the delay is fixed and half random, so
+     * requests that failed together spread out when they retry.
      */
-    private ReasoningResponse callApiWithReasoning(String prompt, boolean isContinue) throws IOException, InterruptedException {
-        Exception lastException = null;
-        
-        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+    private long backoff(int attempt) {
+        long delay = retryDelayMs * (1L << attempt);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * A rate limit (429) response.
+     */
+    private static final class RateLimitException extends IOException {
+        // how long the server asked to wait, or -1 if it did not say
+        final long retryAfterMs;
+
+        RateLimitException(long retryAfterMs) {
+            super("OpenRouter API rate limit exceeded (429)");
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    /**
+     * @return the Retry-After header in milliseconds, given as seconds or as an HTTP date, or -1
+     */
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value.trim()) * 1000));
+        } catch (NumberFormatException e) {
             try {
-                String body = createReasoningRequestBody(prompt, isContinue);
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(endpoint))
-                        .timeout(Duration.ofSeconds(60))
-                        .header("Authorization", "Bearer " + apiKey)
-                        .header("Content-Type", "application/json")
-                        .header("HTTP-Referer", "https://github.com/ta-plugin") // Optional but recommended
-                        .POST(HttpRequest.BodyPublishers.ofString(body))
-                        .build();
-
-                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                    return parseReasoningResponse(response.body());
-                } else if (response.statusCode() == 429) {
-                    // Rate limited - wait and retry
-                    long delay = retryDelayMs * (1L << attempt); // Exponential backoff
-                    Thread.sleep(delay);
-                    continue;
-                } else if (response.statusCode() == 402) {
-                    // Payment required
-                    throw new IOException("API quota exceeded or payment required. Please check your account quota or upgrade your plan.");
-                } else {
-                    throw new IOException("OpenRouter API error: " + response.statusCode() + " - " + response.body());
-                }
-            } catch (Exception e) {
-                lastException = e;
-                if (attempt < maxRetries) {
-                    long delay = retryDelayMs * (1L << attempt); // Exponential backoff
-                    Thread.sleep(delay);
-                }
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(Instant.now(), at.toInstant()).toMillis());
+            } catch (DateTimeParseException e2) {
+                return -1;
             }
         }
-        
-        throw new IOException("Failed to get response from OpenRouter API after " + maxRetries + " retries", lastException);
     }
-    
+
     /**
-     * Call the OpenRouter API with reasoning enabled using message history
-     *
-     * @param messages The message history
-     * @param isContinue Whether this is a continuation of previous reasoning
-     * @return The API response with reasoning details
-     * @throws IOException If an I/O error occurs
-     * @throws InterruptedException If the operation is interrupted
+     * Reads a body as UTF-8 text, decompressing it first if the server gzipped it.
      */
-    private ReasoningResponse callApiWithReasoningMessages(List<Message> messages, boolean isContinue) throws IOException, InterruptedException {
-        Exception lastException = null;
-        
-        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+    private static final HttpResponse.BodyHandler<String> DECODED_STRING = info -> {
+        boolean gzip = info.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.trim().equalsIgnoreCase("gzip"))
+                .orElse(false);
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+            if (!gzip) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    };
+
+    /**
+     * @return the body of a successful response
+     * @throws IOException For any other status
+     */
+    private static String checkStatus(HttpResponse<String> response) throws IOException {
+        int status = response.statusCode();
+        if (status >= 200 && status < 300) {
+            return response.body();
+        } else if (status == 429) {
+            throw new RateLimitException(retryAfterMillis(response));
+        } else if (status == 402) {
+            // Payment required
+            throw new IOException("API quota exceeded or payment required. Please check your account quota or upgrade your plan.");
+        } else {
+            throw new IOException("OpenRouter API error: " + status + " - " + response.body());
+        }
+    }
+
+    /**
+     * Wait for an asynchronous call, for the blocking API. Interrupting the waiting thread
+     * cancels the call.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException || t instanceof UncheckedIOException)
+                && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    /**
+     * Receives the lines of an event stream as the HTTP client delivers them and feeds them to
+     * an {@link SseEventParser}; the body it produces is the assembled answer.
+     */
+    private final class SseSubscriber implements Flow.Subscriber<String> {
+        private final StringBuilder answer = new StringBuilder();
+        private final SseEventParser parser;
+        private IOException failure;
+
+        SseSubscriber(StreamListener listener) {
+            this.parser = new SseEventParser(data -> onStreamEvent(data, answer, listener));
+        }
+
+        HttpResponse.BodySubscriber<String> bodySubscriber() {
+            return HttpResponse.BodySubscribers.fromLineSubscriber(this, subscriber -> {
+                if (failure != null) throw new UncheckedIOException(failure);
+                return answer.toString();
+            }, StandardCharsets.UTF_8, null);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            // after [DONE] or an error the rest of the stream is drained and ignored
+            if (failure != null) return;
             try {
-                String body = createReasoningRequestBodyFromMessages(messages, isContinue);
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(endpoint))
-                        .timeout(Duration.ofSeconds(60))
-                        .header("Authorization", "Bearer " + apiKey)
-                        .header("Content-Type", "application/json")
-                        .header("HTTP-Referer", "https://github.com/ta-plugin") // Optional but recommended
-                        .POST(HttpRequest.BodyPublishers.ofString(body))
-                        .build();
-
-                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                    return parseReasoningResponse(response.body());
-                } else if (response.statusCode() == 429) {
-                    // Rate limited - wait and retry
-                    long delay = retryDelayMs * (1L << attempt); // Exponential backoff
-                    Thread.sleep(delay);
-                    continue;
-                } else if (response.statusCode() == 402) {
-                    // Payment required
-                    throw new IOException("API quota exceeded or payment required. Please check your account quota or upgrade your plan.");
-                } else {
-                    throw new IOException("OpenRouter API error: " + response.statusCode() + " - " + response.body());
-                }
-            } catch (Exception e) {
-                lastException = e;
-                if (attempt < maxRetries) {
-                    long delay = retryDelayMs * (1L << attempt); // Exponential backoff
-                    Thread.sleep(delay);
-                }
+                parser.accept(line);
+            } catch (IOException e) {
+                failure = e;
             }
         }
-        
-        throw new IOException("Failed to get response from OpenRouter API after " + maxRetries + " retries", lastException);
+
+        @Override
+        public void onError(Throwable throwable) {
+            // the body future completes exceptionally by itself
+        }
+
+        @Override
+        public void onComplete() {
+            if (failure != null) return;
+            try {
+                parser.finish();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Handle one streamed chunk: a JSON object whose {@code choices[0].delta.content} holds the
+     * next piece of text, an error object, or {@code [DONE]} at the end.
+     *
+     * @return false once the stream is complete
+     */
+    private boolean onStreamEvent(String data, StringBuilder answer, StreamListener listener) throws IOException {
+        if (data.equals("[DONE]")) {
+            return false;
+        }
+        JsonNode root = objectMapper.readTree(data);
+        JsonNode error = root.path("error");
+        if (error.isObject()) {
+            // errors after the response started arrive as an event instead of a status code
+            throw new IOException("OpenRouter API error: " + error.path("message").asText(error.toString()));
+        }
+        JsonNode choices = root.path("choices");
+        if (choices.isArray() && choices.size() > 0) {
+            JsonNode content = choices.get(0).path("delta").path("content");
+            if (content.isTextual() && !content.asText().isEmpty()) {
+                answer.append(content.asText());
+                listener.onDelta(content.asText());
+            }
+        }
+        return true;
     }
 
     /**
@@ -308,9 +840,10 @@ public class OpenRouterClient {
      *
      * @param prompt The prompt to send
      * @param isReasoning Whether to enable reasoning
+     * @param stream Whether to ask for the answer as server-sent events
      * @return JSON string representing the request body
      */
-    private String createRequestBody(String prompt, boolean isReasoning) {
+    private String createRequestBody(String prompt, boolean isReasoning, boolean stream) {
         ObjectNode requestBody = objectMapper.createObjectNode();
         requestBody.put("model", model);
         
@@ -319,8 +852,11 @@ public class OpenRouterClient {
         userMessage.put("role", "user");
         userMessage.put("content", prompt);
         
-        requestBody.put("temperature", 0.7);
-        requestBody.put("max_tokens", 1000);
+        requestBody.put("temperature", TEMPERATURE);
+        requestBody.put("max_tokens", MAX_TOKENS);
+        if (stream) {
+            requestBody.put("stream", true);
+        }
         
         if (isReasoning) {
             ObjectNode reasoning = requestBody.putObject("reasoning");
@@ -330,6 +866,26 @@ public class OpenRouterClient {
         return requestBody.toString();
     }
     
+    /**
+     * Create the request body for a plain conversation
+     *
+     * @param messages The message history
+     * @return JSON string representing the request body
+     */
+    private String createChatRequestBody(List<Message> messages) {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        requestBody.put("model", model);
+
+        ArrayNode requestMessages = requestBody.putArray("messages");
+        for (Message message : messages) {
+            ObjectNode msg = requestMessages.addObject();
+            msg.put("role", message.role);
+            msg.put("content", message.content);
+        }
+
+        return requestBody.toString();
+    }
+
     /**
      * Create the request body for the OpenRouter API with reasoning enabled
      *
@@ -346,8 +902,8 @@ public class OpenRouterClient {
         userMessage.put("role", "user");
         userMessage.put("content", prompt);
         
-        requestBody.put("temperature", 0.7);
-        requestBody.put("max_tokens", 1000);
+        requestBody.put("temperature", TEMPERATURE);
+        requestBody.put("max_tokens", MAX_TOKENS);
         
         ObjectNode reasoning = requestBody.putObject("reasoning");
         reasoning.put("enabled", true);
@@ -381,8 +937,8 @@ public class OpenRouterClient {
             }
         }
         
-        requestBody.put("temperature", 0.7);
-        requestBody.put("max_tokens", 1000);
+        requestBody.put("temperature", TEMPERATURE);
+        requestBody.put("max_tokens", MAX_TOKENS);
         
         ObjectNode reasoning = requestBody.putObject("reasoning");
         reasoning.put("enabled", true);
@@ -449,6 +1005,16 @@ public class OpenRouterClient {
                      .replace("\r", "\\r").replace("\t", "\\t") + "\"";
     }
     
+    /**
+     * Receives a streamed answer piece by piece
+     */
+    public interface StreamListener {
+        /**
+         * @param text The next piece of the answer, never empty
+         */
+        void onDelta(String text);
+    }
+
     /**
      * Represents a message in the conversation
      */
@@ -0,0 +1,152 @@
+package org.example.ta.llm;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the requests sent to one model, with a priority queue of the requests
+ * waiting for a token. The bucket holds up to {@code burst} tokens and refills at the configured
+ * rate; each request takes one. While the bucket is empty, requests wait in the queue and get
+ * tokens as they refill, the most urgent {@link RequestPriority} first and in arrival order
+ * within one priority, so a question the user is waiting for overtakes queued background work.
+ * <p>
+ * Nothing blocks: {@link #acquire} returns a future completed when the request may be sent,
+ * and a single scheduler thread from the IDE's pool completes them as tokens refill. When the
+ * provider answers with a rate limit error, {@link #pause} holds back every request until its
+ * Retry-After has passed.
+ */
+public class RateLimiter {
+    private static final ScheduledExecutorService SCHEDULER =
+            AppExecutorUtil.createBoundedScheduledExecutorService("CourseTA rate limiter", 1);
+
+    private final double burst;
+    private final double tokensPerNano;
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparing((Waiter w) -> w.priority).thenComparingLong(w -> w.sequence));
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private long pausedUntil = refilledAt;
+    private long sequence;
+    private ScheduledFuture<?> scheduledDrain;
+    private long scheduledDrainAt;
+
+    private static final class Waiter {
+        final RequestPriority priority;
+        final long sequence;
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+
+        Waiter(RequestPriority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * @param requestsPerMinute Sustained rate the bucket refills at
+     * @param burst             Number of requests that may be sent at once after a quiet period
+     */
+    public RateLimiter(double requestsPerMinute, int burst) {
+        if (requestsPerMinute <= 0 || burst < 1) {
+            throw new IllegalArgumentException("rate and burst must be positive: " + requestsPerMinute + ", " + burst);
+        }
+        this.burst = burst;
+        this.tokensPerNano = requestsPerMinute / TimeUnit.MINUTES.toNanos(1);
+        this.tokens = burst;
+    }
+
+    /**
+     * Wait for a token. Cancelling the returned future gives up the place in the queue.
+     *
+     * @param priority How urgent the request is
+     * @return A future completed when the request may be sent
+     */
+    public CompletableFuture<Void> acquire(RequestPriority priority) {
+        Waiter waiter;
+        synchronized (this) {
+            waiter = new Waiter(priority, sequence++);
+            queue.add(waiter);
+        }
+        waiter.permit.whenComplete((ignored, failure) -> {
+            if (waiter.permit.isCancelled()) {
+                synchronized (this) {
+                    queue.remove(waiter);
+                }
+            }
+        });
+        drain();
+        return waiter.permit;
+    }
+
+    /**
+     * Send nothing for the given time, e.g. the Retry-After of a rate limit response. The bucket
+     * is emptied too, so requests resume at the refill rate instead of all at once.
+     */
+    public void pause(long millis) {
+        synchronized (this) {
+            pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+            tokens = 0;
+        }
+        drain();
+    }
+
+    /**
+     * @return the number of requests waiting for a token
+     */
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Hand out the tokens available now, in priority order, and schedule the next drain if
+     * requests are left waiting. The permits are completed outside the lock, because
+     * completing one starts the request.
+     */
+    private void drain() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            // nothing refills during a pause
+            tokens = Math.min(burst, tokens + Math.max(0, now - Math.max(refilledAt, pausedUntil)) * tokensPerNano);
+            refilledAt = now;
+            if (now >= pausedUntil) {
+                while (tokens >= 1 && !queue.isEmpty()) {
+                    granted.add(queue.poll());
+                    tokens -= 1;
+                }
+            }
+            if (!queue.isEmpty()) {
+                long wait = (long) Math.ceil((1 - tokens) / tokensPerNano) + Math.max(0, pausedUntil - now);
+                scheduleDrain(now + wait);
+            }
+        }
+        for (Waiter waiter : granted) {
+            if (!waiter.permit.complete(null)) {
+                // cancelled while being granted; the token goes back
+                synchronized (this) {
+                    tokens = Math.min(burst, tokens + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Make sure a drain runs at the given time; the caller holds the lock.
+     */
+    private void scheduleDrain(long at) {
+        // a drain due by now may be the one running this, which cannot drain again
+        if (scheduledDrain != null && !scheduledDrain.isDone() && scheduledDrainAt > System.nanoTime()) {
+            if (scheduledDrainAt <= at) return;
+            scheduledDrain.cancel(false);
+        }
+        scheduledDrainAt = at;
+        scheduledDrain = SCHEDULER.schedule(this::drain, at - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+}
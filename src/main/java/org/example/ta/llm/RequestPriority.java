@@ -0,0 +1,13 @@
+package org.example.ta.llm;
+
+/**
+ * Order in which requests waiting for the rate limit are sent, most urgent first.
+ */
+public enum RequestPriority {
+    /** A question typed into the tool window; the user is watching for the answer. */
+    INTERACTIVE,
+    /** A question or refactoring started from selected code in the editor. */
+    SELECTED_CODE,
+    /** Background work such as batch jobs and prefetching; waits while anything else is pending. */
+    BATCH
+}
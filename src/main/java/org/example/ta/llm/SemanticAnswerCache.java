@@ -0,0 +1,175 @@
+package org.example.ta.llm;
+
+import org.example.ta.util.VectorKernels;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * In-memory cache of answers to earlier questions, looked up by meaning rather than by exact
+ * text: a question hits if its embedding is close enough to that of an answered question and
+ * retrieval found the same set of chunks for both. Requiring the same chunks keeps a
+ * paraphrase from being served an answer written from different course material, and makes a
+ * reindex that changes those chunks (their ids are content-addressed) miss by itself.
+ * <p>
+ * The question embeddings are L2-normalized float rows of one fixed-size matrix that is scanned
+ * on lookup, which at the bounded size takes well under a millisecond. When the cache is full,
+ * the least recently used answer is replaced.
+ */
+public class SemanticAnswerCache {
+    private final int capacity;
+    private final double threshold;
+    private int dimension = -1;
+    private float[] matrix;
+    private final String[] chunkKeys;
+    private final String[] questions;
+    private final String[] answers;
+    private final long[] lastUsed;
+    private int size;
+    private long clock;
+
+    /**
+     * A cached answer to a similar question.
+     */
+    public static final class Hit {
+        /** The question the answer was generated for. */
+        public final String question;
+        public final String answer;
+        /** Cosine similarity of the two questions' embeddings. */
+        public final double similarity;
+
+        Hit(String question, String answer, double similarity) {
+            this.question = question;
+            this.answer = answer;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * @param capacity  Maximum number of answers kept
+     * @param threshold Minimum cosine similarity of two questions for one's answer to serve the other
+     */
+    public SemanticAnswerCache(int capacity, double threshold) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.threshold = threshold;
+        this.chunkKeys = new String[capacity];
+        this.questions = new String[capacity];
+        this.answers = new String[capacity];
+        this.lastUsed = new long[capacity];
+    }
+
+    /**
+     * Find the most similar answered question that was answered from the same chunks.
+     *
+     * @param questionVector Embedding of the question
+     * @param chunkIds       Ids of the chunks retrieved for the question, in any order
+     * @return the cached answer, or null if no question is similar enough
+     */
+    public synchronized Hit lookup(double[] questionVector, Collection<String> chunkIds) {
+        float[] query = normalize(questionVector);
+        int row = nearest(query, chunkKey(chunkIds));
+        if (row < 0) {
+            return null;
+        }
+        lastUsed[row] = ++clock;
+        return new Hit(questions[row], answers[row], VectorKernels.dot(query, 0, matrix, row * dimension, dimension));
+    }
+
+    /**
+     * Remember the answer to a question. It replaces the answer to a question similar enough to
+     * be served by it; otherwise it takes a free row or that of the least recently used answer.
+     *
+     * @param question       The question as asked
+     * @param questionVector Embedding of the question
+     * @param chunkIds       Ids of the chunks the answer was generated from
+     * @param answer         The answer
+     */
+    public synchronized void put(String question, double[] questionVector, Collection<String> chunkIds, String answer) {
+        float[] vector = normalize(questionVector);
+        if (vector == null) {
+            return; // a question without terms is similar to nothing
+        }
+        if (matrix == null) {
+            dimension = vector.length;
+            matrix = new float[capacity * dimension];
+        }
+        String key = chunkKey(chunkIds);
+        int row = nearest(vector, key);
+        if (row < 0) {
+            row = size < capacity ? size++ : leastRecentlyUsed();
+        }
+        System.arraycopy(vector, 0, matrix, row * dimension, dimension);
+        chunkKeys[row] = key;
+        questions[row] = question;
+        answers[row] = answer;
+        lastUsed[row] = ++clock;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            chunkKeys[i] = questions[i] = answers[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return the row most similar to the vector with the same chunks and at least the
+     * threshold similarity, or -1
+     */
+    private int nearest(float[] vector, String key) {
+        if (vector == null || matrix == null || vector.length != dimension) {
+            return -1;
+        }
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int row = 0; row < size; row++) {
+            if (!chunkKeys[row].equals(key)) continue;
+            float score = VectorKernels.dot(vector, 0, matrix, row * dimension, dimension);
+            if (score >= threshold && score > bestScore) {
+                best = row;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private int leastRecentlyUsed() {
+        int oldest = 0;
+        for (int row = 1; row < size; row++) {
+            if (lastUsed[row] < lastUsed[oldest]) oldest = row;
+        }
+        return oldest;
+    }
+
+    /**
+     * @return the chunk ids sorted and joined, so the same set gives the same key in any order
+     */
+    private static String chunkKey(Collection<String> chunkIds) {
+        List<String> sorted = new ArrayList<>(chunkIds);
+        sorted.sort(null);
+        return String.join(",", sorted);
+    }
+
+    /**
+     * @return the vector scaled to unit length as floats, or null for the zero vector
+     */
+    private static float[] normalize(double[] vector) {
+        double norm = 0;
+        for (double v : vector) norm += v * v;
+        if (norm == 0) {
+            return null;
+        }
+        double scale = 1.0 / Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) normalized[i] = (float) (vector[i] * scale);
+        return normalized;
+    }
+}
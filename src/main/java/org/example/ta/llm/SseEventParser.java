@@ -0,0 +1,67 @@
+package org.example.ta.llm;
+
+import java.io.IOException;
+
+/**
+ * Incremental parser for a text/event-stream body, fed one line at a time. The data lines of an
+ * event are joined with newlines and handed to the handler when the blank line ending the event
+ * arrives; comment lines (starting with ':', used by OpenRouter as keep-alives) and the other
+ * fields are ignored.
+ */
+class SseEventParser {
+    /**
+     * Receives the data of each event.
+     */
+    interface DataHandler {
+        /**
+         * @return false to stop parsing, e.g. after the {@code [DONE]} event
+         */
+        boolean onData(String data) throws IOException;
+    }
+
+    private final DataHandler handler;
+    private final StringBuilder data = new StringBuilder();
+    private boolean hasData;
+    private boolean done;
+
+    SseEventParser(DataHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Feed the next line, without its line terminator.
+     */
+    void accept(String line) throws IOException {
+        if (done) return;
+        if (line.isEmpty()) {
+            dispatch();
+        } else if (line.startsWith("data:")) {
+            if (hasData) data.append('\n');
+            int start = line.length() > 5 && line.charAt(5) == ' ' ? 6 : 5;
+            data.append(line, start, line.length());
+            hasData = true;
+        }
+    }
+
+    /**
+     * Dispatch an event left unterminated at the end of the stream.
+     */
+    void finish() throws IOException {
+        if (!done) dispatch();
+    }
+
+    /**
+     * @return true once the handler asked to stop
+     */
+    boolean isDone() {
+        return done;
+    }
+
+    private void dispatch() throws IOException {
+        if (!hasData) return;
+        String event = data.toString();
+        data.setLength(0);
+        hasData = false;
+        if (!handler.onData(event)) done = true;
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.ta.retrieval;
+
+/**
+ * Turns text into index terms. The same analyzer must be used for indexing and querying,
+ * otherwise query terms will not match the terms stored in the index.
+ */
+public interface Analyzer {
+
+    /**
+     * Receives terms as they are produced. The buffer is reused between calls, so
+     * implementations must copy the characters if they need to keep them.
+     */
+    interface TokenSink {
+        void accept(char[] buffer, int length);
+    }
+
+    /**
+     * Tokenize and normalize the text, passing each resulting term to the sink in order.
+     */
+    void analyze(CharSequence text, TokenSink sink);
+}
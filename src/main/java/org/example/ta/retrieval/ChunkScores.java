@@ -0,0 +1,95 @@
+package org.example.ta.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Scores of the chunks matched by one query, keyed by chunk id in an open-addressing hash
+ * table. It grows with the number of matched chunks rather than with the corpus, so a query
+ * touching a few postings allocates a few small arrays. Entries are kept in insertion order
+ * and can be walked by position.
+ */
+final class ChunkScores {
+    private static final int EMPTY = -1;
+
+    private int[] ids;
+    private double[] scores;
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    ChunkScores(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+        ids = new int[capacity / 2];
+        scores = new double[capacity / 2];
+    }
+
+    /**
+     * Add to the score of the chunk, entering it with a score of 0 first if it is new.
+     */
+    void add(int id, double score) {
+        int slot = mix(id) & mask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == EMPTY) break;
+            if (ids[entry] == id) {
+                scores[entry] += score;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int entry = size++;
+        if (entry == ids.length) {
+            ids = Arrays.copyOf(ids, entry * 2);
+            scores = Arrays.copyOf(scores, entry * 2);
+        }
+        ids[entry] = id;
+        scores[entry] = score;
+        slots[slot] = entry;
+        if (size * 2 > slots.length) rehash();
+    }
+
+    boolean contains(int id) {
+        int slot = mix(id) & mask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == EMPTY) return false;
+            if (ids[entry] == id) return true;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the chunk id of the entry at the given position in insertion order
+     */
+    int id(int entry) {
+        return ids[entry];
+    }
+
+    double score(int entry) {
+        return scores[entry];
+    }
+
+    private void rehash() {
+        int capacity = slots.length * 2;
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = mix(ids[entry]) & mask;
+            while (slots[slot] != EMPTY) slot = (slot + 1) & mask;
+            slots[slot] = entry;
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
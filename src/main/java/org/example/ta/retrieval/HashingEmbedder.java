@@ -0,0 +1,127 @@
+package org.example.ta.retrieval;
+
+/**
+ * Local, dependency-free text embedder based on feature hashing. The terms produced by an
+ * {@link Analyzer} contribute three kinds of features:
+ * <ul>
+ *     <li>word unigrams,</li>
+ *     <li>word bigrams (adjacent terms), which capture short phrases,</li>
+ *     <li>character n-grams of each term padded with boundary marks, which match inflections
+ *     and typos that share most of their characters.</li>
+ * </ul>
+ * Each feature is hashed to one of {@code dimension} slots with a hash-derived sign, so that
+ * collisions cancel out on average instead of piling up, and the vector is L2-normalized.
+ * Nothing is allocated per feature and instances are thread-safe.
+ */
+public class HashingEmbedder {
+    private static final int DEFAULT_DIMENSION = 512;
+    private static final int MIN_GRAM = 3;
+    private static final int MAX_GRAM = 4;
+    // distinct seeds keep the same string from colliding with itself across feature kinds
+    private static final int UNIGRAM_SEED = 0x9747B28C;
+    private static final int BIGRAM_SEED = 0x85EBCA6B;
+    private static final int CHAR_GRAM_SEED = 0xC2B2AE35;
+    private static final double CHAR_GRAM_WEIGHT = 0.5;
+
+    private final int dimension;
+    private final Analyzer analyzer;
+
+    /**
+     * 512-dimensional embedder over the {@link StandardAnalyzer} with stemming.
+     */
+    public HashingEmbedder() {
+        this(DEFAULT_DIMENSION);
+    }
+
+    public HashingEmbedder(int dimension) {
+        this(dimension, new StandardAnalyzer(false, true));
+    }
+
+    /**
+     * @param dimension Length of the produced vectors
+     * @param analyzer  Splits text into the terms the features are built from
+     */
+    public HashingEmbedder(int dimension, Analyzer analyzer) {
+        if (dimension < 1) {
+            throw new IllegalArgumentException("dimension must be positive: " + dimension);
+        }
+        this.dimension = dimension;
+        this.analyzer = analyzer;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the L2-normalized embedding of the text; all zeros if it has no terms
+     */
+    public double[] embed(CharSequence text) {
+        double[] vector = new double[dimension];
+        analyzer.analyze(text, new Analyzer.TokenSink() {
+            private int previous;
+            private boolean hasPrevious;
+
+            @Override
+            public void accept(char[] buffer, int length) {
+                int term = hash(UNIGRAM_SEED, buffer, 0, length);
+                add(vector, term, 1.0);
+                if (hasPrevious) add(vector, fmix(BIGRAM_SEED ^ (previous * 31 + term)), 1.0);
+                previous = term;
+                hasPrevious = true;
+                addCharGrams(vector, buffer, length);
+            }
+        });
+
+        double norm = 0.0;
+        for (double v : vector) norm += v * v;
+        if (norm > 0) {
+            double scale = 1.0 / Math.sqrt(norm);
+            for (int i = 0; i < dimension; i++) vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    /**
+     * Hash the n-grams of {@code "<" + term + ">"} without building that string.
+     */
+    private void addCharGrams(double[] vector, char[] term, int length) {
+        int padded = length + 2;
+        for (int n = MIN_GRAM; n <= MAX_GRAM; n++) {
+            for (int start = 0; start + n <= padded; start++) {
+                int h = CHAR_GRAM_SEED;
+                for (int i = start; i < start + n; i++) {
+                    char c = i == 0 ? '<' : i == padded - 1 ? '>' : term[i - 1];
+                    h = (h ^ c) * 0x01000193;
+                }
+                add(vector, fmix(h), CHAR_GRAM_WEIGHT);
+            }
+        }
+    }
+
+    private void add(double[] vector, int hash, double weight) {
+        // the lowest bit picks the sign, the rest the slot
+        vector[Integer.remainderUnsigned(hash >>> 1, dimension)] += (hash & 1) == 0 ? weight : -weight;
+    }
+
+    /**
+     * FNV-1a over the chars followed by a finalizer, so similar strings land on unrelated slots.
+     */
+    private static int hash(int seed, char[] buffer, int offset, int length) {
+        int h = seed;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ buffer[i]) * 0x01000193;
+        }
+        return fmix(h);
+    }
+
+    // MurmurHash3 32-bit finalizer
+    private static int fmix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,203 @@
+package org.example.ta.retrieval;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.example.ta.index.DocChunk;
+import org.example.ta.index.VectorStore;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Combines the lexical {@link SimpleRetriever} with a {@link VectorStore} of chunk embeddings.
+ * The lexical side matches exact terms, the vector side also finds chunks that share word stems
+ * and fragments but not whole terms, and fusing both lists finds more of the relevant chunks
+ * than either alone.
+ * <p>
+ * The two searches run concurrently: the query is embedded and searched on the IDE's application
+ * executor while the calling thread runs the lexical search, so a query costs about as much as the
+ * slower of the two. Each side returns a deeper candidate list than {@code k}; the lists are
+ * merged by chunk id with reciprocal rank fusion or a weighted sum of normalized scores.
+ */
+public class HybridRetriever {
+    // the usual RRF constant; dampens the difference between the first few ranks
+    private static final int RRF_K = 60;
+    private static final int MIN_CANDIDATES = 20;
+
+    /**
+     * How the two ranked lists are combined.
+     */
+    public enum Fusion {
+        /** Reciprocal rank fusion: the sum of {@code 1 / (60 + rank)} over the lists a chunk is in. */
+        RRF,
+        /** Scores of each list scaled to [0, 1] and summed with the lexical weight and its complement. */
+        WEIGHTED
+    }
+
+    private final SimpleRetriever lexical;
+    private final VectorStore vectors;
+    private final Function<String, double[]> embedder;
+    private final Fusion fusion;
+    private final double lexicalWeight;
+    private final ExecutorService executor;
+
+    /**
+     * Hybrid retriever using reciprocal rank fusion on the IDE's application executor.
+     *
+     * @param embedder Embeds queries the same way the stored chunks were embedded
+     */
+    public HybridRetriever(SimpleRetriever lexical, VectorStore vectors, Function<String, double[]> embedder) {
+        this(lexical, vectors, embedder, Fusion.RRF, 0.5, AppExecutorUtil.getAppExecutorService());
+    }
+
+    /**
+     * @param lexical       Term-based retriever over the chunks
+     * @param vectors       Embeddings of the same chunks, keyed by {@link DocChunk#id()}; may be null
+     * @param embedder      Embeds queries the same way the stored chunks were embedded
+     * @param fusion        How the two result lists are combined
+     * @param lexicalWeight Weight of the lexical scores for {@link Fusion#WEIGHTED}, in [0, 1]
+     * @param executor      Runs the vector search while the caller runs the lexical one
+     */
+    public HybridRetriever(SimpleRetriever lexical, VectorStore vectors, Function<String, double[]> embedder,
+                           Fusion fusion, double lexicalWeight, ExecutorService executor) {
+        if (lexicalWeight < 0 || lexicalWeight > 1) {
+            throw new IllegalArgumentException("lexicalWeight must be in [0, 1]: " + lexicalWeight);
+        }
+        this.lexical = lexical;
+        this.vectors = vectors;
+        this.embedder = embedder;
+        this.fusion = fusion;
+        this.lexicalWeight = lexicalWeight;
+        this.executor = executor;
+    }
+
+    public SimpleRetriever getLexical() {
+        return lexical;
+    }
+
+    public VectorStore getVectors() {
+        return vectors;
+    }
+
+    /**
+     * Retrieve the top-k chunks by fused score. If the vector search fails, the lexical results
+     * are returned on their own.
+     *
+     * @param query The question
+     * @param k     Number of results to return
+     * @return Chunks sorted by fused score (highest first), with the score of each signal
+     */
+    public List<ScoredChunk> retrieve(String query, int k) {
+        int depth = Math.max(k * 4, MIN_CANDIDATES);
+        Future<List<VectorStore.ScoredChunk>> vectorSearch = vectors == null || vectors.size() == 0
+                ? null
+                : executor.submit(() -> vectors.search(embedder.apply(query), depth));
+
+        List<SimpleRetriever.ScoredChunk> lexicalHits = lexical.retrieve(query, depth);
+        List<VectorStore.ScoredChunk> vectorHits = List.of();
+        if (vectorSearch != null) {
+            try {
+                vectorHits = vectorSearch.get();
+            } catch (InterruptedException e) {
+                vectorSearch.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.err.println("[Retrieval] Vector search failed, using lexical results only: " + e.getCause());
+            }
+        }
+        return fuse(lexicalHits, vectorHits, k);
+    }
+
+    private List<ScoredChunk> fuse(List<SimpleRetriever.ScoredChunk> lexicalHits,
+                                   List<VectorStore.ScoredChunk> vectorHits, int k) {
+        // insertion order (lexical first) breaks ties between equal fused scores
+        Map<String, Candidate> candidates = new LinkedHashMap<>();
+        int rank = 0;
+        for (SimpleRetriever.ScoredChunk hit : lexicalHits) {
+            // the lexical retriever pads with unmatched chunks at score 0; those carry no signal
+            if (hit.score <= 0) break;
+            Candidate c = candidates.computeIfAbsent(hit.chunk.id(), id -> new Candidate(hit.chunk));
+            c.lexicalRank = ++rank;
+            c.lexicalScore = hit.score;
+        }
+        rank = 0;
+        for (VectorStore.ScoredChunk hit : vectorHits) {
+            Candidate c = candidates.computeIfAbsent(hit.chunk.id(), id -> new Candidate(hit.chunk));
+            c.vectorRank = ++rank;
+            c.vectorScore = hit.score;
+        }
+
+        Scale lexicalScale = new Scale(), vectorScale = new Scale();
+        if (fusion == Fusion.WEIGHTED) {
+            for (Candidate c : candidates.values()) {
+                if (c.lexicalRank > 0) lexicalScale.include(c.lexicalScore);
+                if (c.vectorRank > 0) vectorScale.include(c.vectorScore);
+            }
+        }
+        List<ScoredChunk> fused = new ArrayList<>(candidates.size());
+        for (Candidate c : candidates.values()) {
+            double score = 0;
+            if (fusion == Fusion.RRF) {
+                if (c.lexicalRank > 0) score += 1.0 / (RRF_K + c.lexicalRank);
+                if (c.vectorRank > 0) score += 1.0 / (RRF_K + c.vectorRank);
+            } else {
+                if (c.lexicalRank > 0) score += lexicalWeight * lexicalScale.apply(c.lexicalScore);
+                if (c.vectorRank > 0) score += (1 - lexicalWeight) * vectorScale.apply(c.vectorScore);
+            }
+            fused.add(new ScoredChunk(c.chunk, score, c.lexicalScore, c.lexicalRank, c.vectorScore, c.vectorRank));
+        }
+        fused.sort((a, b) -> Double.compare(b.score, a.score));
+        return fused.size() > k ? new ArrayList<>(fused.subList(0, Math.max(0, k))) : fused;
+    }
+
+    private static final class Candidate {
+        final DocChunk chunk;
+        int lexicalRank;
+        double lexicalScore = Double.NaN;
+        int vectorRank;
+        double vectorScore = Double.NaN;
+
+        Candidate(DocChunk chunk) {
+            this.chunk = chunk;
+        }
+    }
+
+    /**
+     * Min-max scaling of the scores of one list to [0, 1]; a list of equal scores maps to 1.
+     */
+    private static final class Scale {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void include(double score) {
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+
+        double apply(double score) {
+            return max > min ? (score - min) / (max - min) : 1.0;
+        }
+    }
+
+    /**
+     * A fused result. {@link #score} is the fused score; the per-signal scores are NaN and the
+     * ranks 0 when the chunk was not among that signal's candidates.
+     */
+    public static class ScoredChunk extends SimpleRetriever.ScoredChunk {
+        public final double lexicalScore;
+        public final int lexicalRank;
+        public final double vectorScore;
+        public final int vectorRank;
+
+        public ScoredChunk(DocChunk chunk, double score, double lexicalScore, int lexicalRank,
+                           double vectorScore, int vectorRank) {
+            super(chunk, score);
+            this.lexicalScore = lexicalScore;
+            this.lexicalRank = lexicalRank;
+            this.vectorScore = vectorScore;
+            this.vectorRank = vectorRank;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.example.ta.retrieval;
+
+import org.example.ta.index.DocChunk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the index that queries are served from. A reindex builds a complete new
+ * {@link Snapshot} off to the side and {@link #publish}es it with a single atomic swap, so a
+ * query sees either the old index or the new one, never a mix, and neither side ever blocks.
+ * <p>
+ * Snapshots are reference counted: the holder owns one reference to the current snapshot and
+ * every {@link #acquire()}d {@link Lease} one more. A replaced snapshot is released, closing
+ * its resources, when the last query still using it closes its lease.
+ */
+public class IndexHolder {
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * An immutable, versioned index: the retriever and the chunks it was built over. Nothing
+     * reachable from a published snapshot may be modified.
+     */
+    public static final class Snapshot {
+        public final long version;
+        /**
+         * Hash of the ids of the chunks in order. Chunk ids are content-addressed, so unlike
+         * {@link #version} this is the same after a restart or a reindex that changed nothing.
+         */
+        public final String fingerprint;
+        public final HybridRetriever retriever;
+        public final List<DocChunk> chunks;
+        private final Closeable resources;
+        // one reference for the holder while current, plus one per open lease
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Snapshot(long version, HybridRetriever retriever, List<DocChunk> chunks, Closeable resources) {
+            this.version = version;
+            this.retriever = retriever;
+            this.chunks = List.copyOf(chunks);
+            this.resources = resources;
+            this.fingerprint = fingerprint(this.chunks);
+        }
+
+        private static String fingerprint(List<DocChunk> chunks) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (DocChunk chunk : chunks) {
+                    digest.update(chunk.id().getBytes(StandardCharsets.US_ASCII));
+                }
+                return HexFormat.of().formatHex(digest.digest(), 0, 16);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // every JVM must provide SHA-256
+            }
+        }
+
+        /**
+         * @return false if the snapshot was already released and must not be used
+         */
+        private boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) return false;
+                if (references.compareAndSet(count, count + 1)) return true;
+            }
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0 && resources != null) {
+                try {
+                    resources.close();
+                } catch (IOException e) {
+                    System.err.println("[Index] Cannot release index version " + version + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps a snapshot alive for the duration of a query; use with try-with-resources.
+     */
+    public static final class Lease implements AutoCloseable {
+        public final Snapshot snapshot;
+        private boolean closed;
+
+        private Lease(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                snapshot.release();
+            }
+        }
+    }
+
+    /**
+     * Make a new index current. The previous snapshot is released once no lease holds it.
+     *
+     * @param retriever The retriever to serve queries from; must not be changed afterwards
+     * @param chunks    The chunks the retriever was built over
+     * @param resources Closed when the snapshot is released, or null
+     * @return the version number of the new snapshot
+     */
+    public long publish(HybridRetriever retriever, List<DocChunk> chunks, Closeable resources) {
+        Snapshot next = new Snapshot(versions.incrementAndGet(), retriever, chunks, resources);
+        Snapshot previous = current.getAndSet(next);
+        if (previous != null) previous.release();
+        return next.version;
+    }
+
+    /**
+     * Pin the current snapshot for a query. Never blocks: if the snapshot is replaced and
+     * released between reading and pinning it, the newer one is pinned instead.
+     *
+     * @return a lease on the current snapshot, or null if nothing has been published
+     */
+    public Lease acquire() {
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (snapshot == null) return null;
+            if (snapshot.retain()) return new Lease(snapshot);
+        }
+    }
+
+    /**
+     * @return the current snapshot without pinning it, or null; for status display only
+     */
+    public Snapshot peek() {
+        return current.get();
+    }
+
+    /**
+     * Drop the current snapshot; it is released once in-flight queries finish.
+     */
+    public void clear() {
+        Snapshot previous = current.getAndSet(null);
+        if (previous != null) previous.release();
+    }
+}
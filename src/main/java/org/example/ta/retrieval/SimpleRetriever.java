@@ -1,70 +1,530 @@
 package org.example.ta.retrieval;
 
 import org.example.ta.index.DocChunk;
+import org.example.ta.util.TopKCollector;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * A very simple retrieval mechanism using token overlap and TF scoring.
  * This avoids external embedding services and is deterministic.
+ * <p>
+ * An inverted index (term dictionary, postings of (chunkId, tf) and precomputed chunk norms)
+ * is built once in the constructor, so query cost depends on the postings of the query terms
+ * rather than on the corpus size. Terms are interned to int ids and all postings live in two
+ * flat arrays addressed by per-term offsets, so the index holds no per-chunk maps or boxed values.
+ * <p>
+ * Text is turned into terms by a pluggable {@link Analyzer} (by default a {@link StandardAnalyzer},
+ * which keeps non-ASCII text and segments Chinese into bigrams); the same analyzer is applied to
+ * chunks at build time and to queries.
+ * <p>
+ * Two ranking modes are supported: the original cosine over TF-IDF vectors, and BM25, which
+ * normalizes for chunk length and is evaluated with MaxScore dynamic pruning so that top-k
+ * queries can skip most postings.
  */
 public class SimpleRetriever {
+    // standard BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * Ranking function used by {@link #retrieve(String, int)}.
+     */
+    public enum Scoring {
+        /** Cosine similarity between TF-IDF vectors. */
+        TF_IDF,
+        /** Okapi BM25 with chunk-length normalization, evaluated with MaxScore pruning. */
+        BM25
+    }
+
     private final List<DocChunk> chunks;
-    private final List<Map<String, Integer>> chunkTermFreqs = new ArrayList<>();
-    private final Map<String, Integer> df = new HashMap<>();
+    private final Scoring scoring;
+    private final Analyzer analyzer;
+    private final TermDictionary dictionary;
+    // postings of term t are postingChunks/postingTfs[postingOffsets[t] .. postingOffsets[t + 1])
+    private final int[] postingOffsets;
+    private final int[] postingChunks;
+    private final short[] postingTfs;
+    private final double[] idfs;
+    private final double[] chunkNorms;
+    private final int[] chunkLengths;
+    private final double avgChunkLength;
+    // highest BM25 contribution of each term over its postings, used as MaxScore upper bound
+    private final double[] bm25UpperBounds;
     private final int corpusSize;
 
     public SimpleRetriever(List<DocChunk> chunks) {
+        this(chunks, Scoring.TF_IDF);
+    }
+
+    public SimpleRetriever(List<DocChunk> chunks, Scoring scoring) {
+        this(chunks, scoring, new StandardAnalyzer());
+    }
+
+    public SimpleRetriever(List<DocChunk> chunks, Scoring scoring, Analyzer analyzer) {
+        this(chunks, scoring, analyzer, invert(chunks, analyzer));
+    }
+
+    private SimpleRetriever(List<DocChunk> chunks, Scoring scoring, Analyzer analyzer, Postings index) {
         this.chunks = chunks;
-        for (DocChunk c : chunks) {
-            Map<String, Integer> tf = termFreq(c.text);
-            chunkTermFreqs.add(tf);
-// update document frequency
-            Set<String> seen = new HashSet<>(tf.keySet());
-            for (String t : seen) df.put(t, df.getOrDefault(t, 0) + 1);
-        }
+        this.scoring = scoring;
+        this.analyzer = analyzer;
         this.corpusSize = chunks.size();
+        this.dictionary = index.dictionary;
+        this.postingOffsets = index.offsets;
+        this.postingChunks = index.chunks;
+        this.postingTfs = index.tfs;
+        this.chunkLengths = index.chunkLengths;
+        long totalLength = 0;
+        for (int len : chunkLengths) totalLength += len;
+        this.avgChunkLength = corpusSize == 0 ? 0 : (double) totalLength / corpusSize;
+
+        int terms = dictionary.size();
+        this.idfs = new double[terms];
+        for (int t = 0; t < terms; t++) idfs[t] = idf(df(t));
+
+        // document frequency is the postings length, so norms can only be computed once all chunks are seen
+        this.chunkNorms = new double[corpusSize];
+        for (int t = 0; t < terms; t++) {
+            for (int p = postingOffsets[t]; p < postingOffsets[t + 1]; p++) {
+                double w = postingTfs[p] * idfs[t];
+                chunkNorms[postingChunks[p]] += w * w;
+            }
+        }
+        for (int i = 0; i < corpusSize; i++) chunkNorms[i] = Math.sqrt(chunkNorms[i]);
+
+        this.bm25UpperBounds = new double[scoring == Scoring.BM25 ? terms : 0];
+        if (scoring == Scoring.BM25) {
+            for (int t = 0; t < terms; t++) {
+                double idf = bm25Idf(df(t));
+                double max = 0.0;
+                for (int p = postingOffsets[t]; p < postingOffsets[t + 1]; p++) {
+                    max = Math.max(max, bm25(idf, postingTfs[p], chunkLengths[postingChunks[p]]));
+                }
+                bm25UpperBounds[t] = max;
+            }
+        }
+    }
+
+    public Scoring getScoring() {
+        return scoring;
+    }
+
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Build a retriever for an updated chunk list, such as after some files were re-indexed.
+     * Chunks carried over from this retriever reuse its postings instead of being analyzed again,
+     * so the cost is dominated by the new chunks rather than by the corpus size.
+     *
+     * @param chunks      The updated chunk list
+     * @param previousIds For each chunk in {@code chunks}, its id in this retriever, or -1 if it is new
+     */
+    public SimpleRetriever update(List<DocChunk> chunks, int[] previousIds) {
+        return new SimpleRetriever(chunks, scoring, analyzer, invert(chunks, analyzer, this, previousIds));
+    }
+
+    private static Postings invert(List<DocChunk> chunks, Analyzer analyzer) {
+        return invert(chunks, analyzer, null, null);
+    }
+
+    /**
+     * Build the postings: first a sorted forward index of (termId, tf) runs per chunk together
+     * with document frequencies, then its inversion into per-term postings. Chunks are visited
+     * in order, so every postings list comes out sorted by chunk id. Chunks with a previous id
+     * take their forward runs from the previous retriever's postings instead of the analyzer.
+     */
+    private static Postings invert(List<DocChunk> chunks, Analyzer analyzer, SimpleRetriever previous, int[] previousIds) {
+        int corpusSize = chunks.size();
+        // the previous dictionary is still serving queries, so new terms go into a copy
+        TermDictionary dictionary = previous == null ? new TermDictionary() : previous.dictionary.copy();
+        Postings reused = previous == null ? null : previous.forwardIndex();
+        int[] chunkLengths = new int[corpusSize];
+        int[] forwardOffsets = new int[corpusSize + 1];
+        int[] forwardTerms = new int[1024];
+        int[] forwardTfs = new int[1024];
+        int[] df = new int[Math.max(1024, dictionary.size())];
+        int forwardSize = 0;
+        TermIdCollector collector = new TermIdCollector(dictionary);
+        for (int i = 0; i < corpusSize; i++) {
+            int old = previousIds == null ? -1 : previousIds[i];
+            if (reused != null && old >= 0) {
+                for (int f = reused.offsets[old]; f < reused.offsets[old + 1]; f++) {
+                    if (forwardSize == forwardTerms.length) {
+                        forwardTerms = Arrays.copyOf(forwardTerms, forwardSize * 2);
+                        forwardTfs = Arrays.copyOf(forwardTfs, forwardSize * 2);
+                    }
+                    forwardTerms[forwardSize] = reused.chunks[f];
+                    forwardTfs[forwardSize++] = reused.tfs[f];
+                    df[reused.chunks[f]]++;
+                }
+                chunkLengths[i] = previous.chunkLengths[old];
+                forwardOffsets[i + 1] = forwardSize;
+                continue;
+            }
+            collector.size = 0;
+            analyzer.analyze(chunks.get(i).text, collector);
+            int[] scratch = collector.ids;
+            int n = collector.size;
+            Arrays.sort(scratch, 0, n);
+            for (int j = 0; j < n; ) {
+                int term = scratch[j], run = j;
+                while (j < n && scratch[j] == term) j++;
+                if (forwardSize == forwardTerms.length) {
+                    forwardTerms = Arrays.copyOf(forwardTerms, forwardSize * 2);
+                    forwardTfs = Arrays.copyOf(forwardTfs, forwardSize * 2);
+                }
+                forwardTerms[forwardSize] = term;
+                forwardTfs[forwardSize++] = j - run;
+                if (term >= df.length) df = Arrays.copyOf(df, Math.max(df.length * 2, term + 1));
+                df[term]++;
+            }
+            chunkLengths[i] = n;
+            forwardOffsets[i + 1] = forwardSize;
+        }
+
+        // terms that only occurred in removed chunks are dropped so updates never accumulate them
+        int terms = dictionary.size();
+        int live = 0;
+        for (int t = 0; t < terms; t++) if (df[t] > 0) live++;
+        if (live < terms) {
+            TermDictionary compacted = new TermDictionary(live);
+            int[] remap = new int[terms];
+            int[] compactedDf = new int[live];
+            for (int t = 0; t < terms; t++) {
+                if (df[t] == 0) continue;
+                remap[t] = compacted.getOrAdd(dictionary.term(t));
+                compactedDf[remap[t]] = df[t];
+            }
+            for (int f = 0; f < forwardSize; f++) forwardTerms[f] = remap[forwardTerms[f]];
+            dictionary = compacted;
+            df = compactedDf;
+            terms = live;
+        }
+
+        int[] offsets = new int[terms + 1];
+        for (int t = 0; t < terms; t++) offsets[t + 1] = offsets[t] + df[t];
+        int[] postingChunks = new int[forwardSize];
+        short[] postingTfs = new short[forwardSize];
+        int[] fill = Arrays.copyOf(offsets, terms);
+        for (int i = 0; i < corpusSize; i++) {
+            for (int f = forwardOffsets[i]; f < forwardOffsets[i + 1]; f++) {
+                int p = fill[forwardTerms[f]]++;
+                postingChunks[p] = i;
+                postingTfs[p] = (short) Math.min(forwardTfs[f], Short.MAX_VALUE);
+            }
+        }
+        return new Postings(dictionary, offsets, postingChunks, postingTfs, chunkLengths);
+    }
+
+    /**
+     * Transpose the postings back into per-chunk runs: in the returned structure {@code offsets}
+     * is indexed by chunk id and {@code chunks} holds term ids.
+     */
+    private Postings forwardIndex() {
+        int[] offsets = new int[corpusSize + 1];
+        for (int chunk : postingChunks) offsets[chunk + 1]++;
+        for (int i = 0; i < corpusSize; i++) offsets[i + 1] += offsets[i];
+        int[] termIds = new int[postingChunks.length];
+        short[] tfs = new short[postingChunks.length];
+        int[] fill = Arrays.copyOf(offsets, corpusSize);
+        for (int t = 0; t < dictionary.size(); t++) {
+            for (int p = postingOffsets[t]; p < postingOffsets[t + 1]; p++) {
+                int f = fill[postingChunks[p]]++;
+                termIds[f] = t;
+                tfs[f] = postingTfs[p];
+            }
+        }
+        return new Postings(dictionary, offsets, termIds, tfs, chunkLengths);
+    }
+
+    /**
+     * Write the term dictionary and postings. Weights, norms and bounds are derived data and are
+     * recomputed by {@link #readFrom}, so a snapshot can be reloaded with either scoring mode.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        writeString(out, analyzer.getClass().getName());
+        out.writeInt(corpusSize);
+        int terms = dictionary.size();
+        out.writeInt(terms);
+        for (int t = 0; t < terms; t++) writeString(out, dictionary.term(t));
+        for (int offset : postingOffsets) out.writeInt(offset);
+        for (int chunk : postingChunks) out.writeInt(chunk);
+        for (short tf : postingTfs) out.writeShort(tf);
+        for (int len : chunkLengths) out.writeInt(len);
+    }
+
+    /**
+     * Restore a retriever written by {@link #writeTo}. Arrays are bulk-copied out of the buffer,
+     * which is typically a memory-mapped snapshot file.
+     *
+     * @throws IOException if the data was written for a different corpus or analyzer
+     */
+    public static SimpleRetriever readFrom(ByteBuffer in, List<DocChunk> chunks, Scoring scoring, Analyzer analyzer)
+            throws IOException {
+        if (!analyzer.getClass().getName().equals(readString(in))) {
+            throw new IOException("Index was built with a different analyzer");
+        }
+        int corpusSize = in.getInt();
+        if (corpusSize != chunks.size()) {
+            throw new IOException("Index covers " + corpusSize + " chunks, expected " + chunks.size());
+        }
+        int terms = in.getInt();
+        TermDictionary dictionary = new TermDictionary(terms);
+        for (int t = 0; t < terms; t++) dictionary.getOrAdd(readString(in));
+        int[] offsets = new int[terms + 1];
+        readInts(in, offsets);
+        int[] postingChunks = new int[offsets[terms]];
+        readInts(in, postingChunks);
+        short[] postingTfs = new short[offsets[terms]];
+        in.asShortBuffer().get(postingTfs);
+        in.position(in.position() + postingTfs.length * Short.BYTES);
+        int[] chunkLengths = new int[corpusSize];
+        readInts(in, chunkLengths);
+        return new SimpleRetriever(chunks, scoring, analyzer,
+                new Postings(dictionary, offsets, postingChunks, postingTfs, chunkLengths));
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
-    private Map<String, Integer> termFreq(String text) {
-        String[] toks = text.toLowerCase().replaceAll("[^a-z0-9 ]", " ").split("\\s+");
-        Map<String, Integer> tf = new HashMap<>();
-        for (String t : toks) if (!t.isBlank()) tf.put(t, tf.getOrDefault(t, 0) + 1);
-        return tf;
+    private static void readInts(ByteBuffer in, int[] dst) {
+        in.asIntBuffer().get(dst);
+        in.position(in.position() + dst.length * Integer.BYTES);
     }
 
-    private double idf(String term) {
-        return Math.log(1 + (double) corpusSize / (1 + df.getOrDefault(term, 0)));
+    private QueryTerms analyzeQuery(String query) {
+        QueryTerms terms = new QueryTerms();
+        analyzer.analyze(query, terms);
+        return terms;
     }
 
-    private Map<String, Double> tfIdf(Map<String, Integer> tf) {
-        Map<String, Double> m = new HashMap<>();
-        for (Map.Entry<String, Integer> e : tf.entrySet()) m.put(e.getKey(), e.getValue() * idf(e.getKey()));
-        return m;
+    private int df(int term) {
+        return postingOffsets[term + 1] - postingOffsets[term];
     }
 
-    private double dot(Map<String, Double> a, Map<String, Double> b) {
-        double s = 0.0;
-        for (Map.Entry<String, Double> e : a.entrySet()) s += e.getValue() * b.getOrDefault(e.getKey(), 0.0);
-        return s;
+    private double idf(int df) {
+        return Math.log(1 + (double) corpusSize / (1 + df));
     }
 
-    private double norm(Map<String, Double> a) {
-        double s = 0.0; for (double v : a.values()) s += v * v; return Math.sqrt(s);
+    private double bm25Idf(int df) {
+        return Math.log(1 + (corpusSize - df + 0.5) / (df + 0.5));
+    }
+
+    private double bm25(double idf, int tf, int chunkLength) {
+        double norm = K1 * (1 - B + B * chunkLength / avgChunkLength);
+        return idf * tf * (K1 + 1) / (tf + norm);
     }
 
     public List<ScoredChunk> retrieve(String query, int k) {
-        Map<String, Integer> qtf = termFreq(query);
-        Map<String, Double> qvec = tfIdf(qtf);
-        List<ScoredChunk> scored = new ArrayList<>();
-        for (int i = 0; i < chunks.size(); i++) {
-            Map<String, Double> cvec = tfIdf(chunkTermFreqs.get(i));
-            double denom = norm(qvec) * norm(cvec);
-            double sim = denom == 0 ? 0 : dot(qvec, cvec) / denom;
-            scored.add(new ScoredChunk(chunks.get(i), sim));
+        return scoring == Scoring.BM25 ? retrieveBm25(query, k) : retrieveTfIdf(query, k);
+    }
+
+    private List<ScoredChunk> retrieveTfIdf(String query, int k) {
+        QueryTerms qtf = analyzeQuery(query);
+        int[] termIds = new int[qtf.size()];
+        long postings = 0;
+        for (int q = 0; q < termIds.length; q++) {
+            termIds[q] = dictionary.get(qtf.term(q));
+            if (termIds[q] >= 0) postings += df(termIds[q]);
+        }
+        ChunkScores dots = new ChunkScores((int) Math.min(postings, corpusSize));
+        double qnorm = 0.0;
+        for (int q = 0; q < termIds.length; q++) {
+            int term = termIds[q];
+            double idf = term < 0 ? idf(0) : idfs[term];
+            double qw = qtf.freqs[q] * idf;
+            qnorm += qw * qw;
+            if (term < 0) continue;
+            for (int p = postingOffsets[term]; p < postingOffsets[term + 1]; p++) {
+                dots.add(postingChunks[p], qw * (postingTfs[p] * idf));
+            }
+        }
+        qnorm = Math.sqrt(qnorm);
+
+        TopKCollector collector = new TopKCollector(k);
+        for (int i = 0; i < dots.size(); i++) {
+            int id = dots.id(i);
+            double denom = qnorm * chunkNorms[id];
+            collector.offer(id, denom == 0 ? 0 : dots.score(i) / denom);
+        }
+        return toScoredChunks(collector, k);
+    }
+
+    /**
+     * BM25 top-k with MaxScore: query terms are ordered by their score upper bound, and the
+     * longest prefix whose bounds sum to at most the current k-th best score is "non-essential".
+     * Only chunks occurring in an essential term's postings can still enter the top k, so
+     * candidates are generated from those lists alone and the non-essential lists are merely
+     * probed, stopping as soon as the remaining bounds cannot lift a candidate over the threshold.
+     */
+    private List<ScoredChunk> retrieveBm25(String query, int k) {
+        QueryTerms qtf = analyzeQuery(query);
+        List<int[]> found = new ArrayList<>();   // (termId, qtf)
+        for (int q = 0; q < qtf.size(); q++) {
+            int term = dictionary.get(qtf.term(q));
+            if (term >= 0) found.add(new int[]{term, qtf.freqs[q]});
+        }
+        found.sort(Comparator.comparingDouble(f -> f[1] * bm25UpperBounds[f[0]]));
+
+        int n = found.size();
+        int[] cursors = new int[n];
+        int[] ends = new int[n];
+        double[] weights = new double[n];   // qtf * idf per term
+        double[] bounds = new double[n];    // prefix sums of the upper bounds
+        for (int i = 0; i < n; i++) {
+            int term = found.get(i)[0], tf = found.get(i)[1];
+            cursors[i] = postingOffsets[term];
+            ends[i] = postingOffsets[term + 1];
+            weights[i] = tf * bm25Idf(df(term));
+            bounds[i] = tf * bm25UpperBounds[term] + (i > 0 ? bounds[i - 1] : 0);
+        }
+
+        TopKCollector collector = new TopKCollector(k);
+        double threshold = 0.0;
+        int firstEssential = 0;
+        while (k > 0 && firstEssential < n) {
+            int doc = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < n; i++) {
+                if (cursors[i] < ends[i]) doc = Math.min(doc, postingChunks[cursors[i]]);
+            }
+            if (doc == Integer.MAX_VALUE) break;
+
+            double score = 0.0;
+            for (int i = firstEssential; i < n; i++) {
+                if (cursors[i] < ends[i] && postingChunks[cursors[i]] == doc) {
+                    score += bm25Term(weights[i], postingTfs[cursors[i]], doc);
+                    cursors[i]++;
+                }
+            }
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (collector.isFull() && score + bounds[i] <= threshold) break;
+                cursors[i] = advance(cursors[i], ends[i], doc);
+                if (cursors[i] < ends[i] && postingChunks[cursors[i]] == doc) {
+                    score += bm25Term(weights[i], postingTfs[cursors[i]], doc);
+                }
+            }
+
+            // chunks are visited in increasing id order, so a tie never displaces an earlier chunk
+            if (collector.offer(doc, score) && collector.isFull()) {
+                threshold = collector.threshold();
+                while (firstEssential < n && bounds[firstEssential] <= threshold) firstEssential++;
+            }
+        }
+        return toScoredChunks(collector, k);
+    }
+
+    private double bm25Term(double weight, int tf, int chunkId) {
+        return bm25(weight, tf, chunkLengths[chunkId]);
+    }
+
+    /**
+     * Position of the first posting in {@code [from, to)} whose chunk id is at least {@code target}.
+     */
+    private int advance(int from, int to, int target) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (postingChunks[mid] < target) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Materialize the collected top k. Chunks sharing no term with the query score 0 and fill
+     * the remaining slots in corpus order.
+     * <p>
+     * Every matched chunk is offered to the collector until it is full, so when slots are left
+     * to fill the collected chunks are exactly the matched ones, and they alone are skipped.
+     */
+    private List<ScoredChunk> toScoredChunks(TopKCollector collector, int k) {
+        int[] ids = new int[collector.size()];
+        double[] scores = new double[ids.length];
+        int n = collector.drainTo(ids, scores);
+        List<ScoredChunk> top = new ArrayList<>(Math.max(0, k));
+        for (int i = 0; i < n; i++) top.add(new ScoredChunk(chunks.get(ids[i]), scores[i]));
+        if (top.size() >= k) {
+            return top;
+        }
+        int[] matched = Arrays.copyOf(ids, n);
+        Arrays.sort(matched);
+        for (int i = 0; i < corpusSize && top.size() < k; i++) {
+            if (Arrays.binarySearch(matched, i) < 0) top.add(new ScoredChunk(chunks.get(i), 0));
+        }
+        return top;
+    }
+
+    private static final class Postings {
+        final TermDictionary dictionary;
+        final int[] offsets;
+        final int[] chunks;
+        final short[] tfs;
+        final int[] chunkLengths;
+
+        Postings(TermDictionary dictionary, int[] offsets, int[] chunks, short[] tfs, int[] chunkLengths) {
+            this.dictionary = dictionary;
+            this.offsets = offsets;
+            this.chunks = chunks;
+            this.tfs = tfs;
+            this.chunkLengths = chunkLengths;
+        }
+    }
+
+    /**
+     * Collects the term ids of one chunk into a reusable array while it is analyzed.
+     */
+    private static final class TermIdCollector implements Analyzer.TokenSink {
+        final TermDictionary dictionary;
+        int[] ids = new int[64];
+        int size;
+
+        TermIdCollector(TermDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public void accept(char[] buffer, int length) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = dictionary.getOrAdd(buffer, length);
+        }
+    }
+
+    /**
+     * Distinct terms of a query with their frequencies, in order of first occurrence.
+     */
+    private static final class QueryTerms implements Analyzer.TokenSink {
+        final TermDictionary terms = new TermDictionary();
+        int[] freqs = new int[16];
+
+        @Override
+        public void accept(char[] buffer, int length) {
+            int id = terms.getOrAdd(buffer, length);
+            if (id == freqs.length) freqs = Arrays.copyOf(freqs, id * 2);
+            freqs[id]++;
+        }
+
+        int size() {
+            return terms.size();
+        }
+
+        String term(int i) {
+            return terms.term(i);
         }
-        return scored.stream().sorted(Comparator.comparingDouble((ScoredChunk sc) -> -sc.score)).limit(k).collect(Collectors.toList());
     }
 
     public static class ScoredChunk {
@@ -72,4 +532,4 @@ public class SimpleRetriever {
         public final double score;
         public ScoredChunk(DocChunk chunk, double score) { this.chunk = chunk; this.score = score; }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package org.example.ta.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass analyzer over the characters of the input.
+ * <ul>
+ *     <li>Runs of letters and digits form a word, lowercased per code point (so non-ASCII
+ *     letters are kept instead of being stripped).</li>
+ *     <li>Runs of CJK characters, which are not separated by spaces, are segmented into
+ *     overlapping bigrams; an isolated CJK character becomes a unigram.</li>
+ *     <li>Optionally, English stop words are dropped and plural suffixes are stemmed.</li>
+ * </ul>
+ * Terms are written into one buffer per call, so analyzing text allocates nothing per token,
+ * and instances can be shared between indexing and concurrent queries.
+ */
+public class StandardAnalyzer implements Analyzer {
+    private static final String[] ENGLISH_STOP_WORDS = {
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in", "into", "is", "it",
+            "no", "not", "of", "on", "or", "such", "that", "the", "their", "then", "there", "these",
+            "they", "this", "to", "was", "will", "with"
+    };
+
+    private final TermDictionary stopWords;
+    private final boolean stem;
+
+    /**
+     * Analyzer without stop-word removal or stemming.
+     */
+    public StandardAnalyzer() {
+        this(false, false);
+    }
+
+    /**
+     * @param removeStopWords drop common English function words
+     * @param stem            strip English plural suffixes ("queries" -> "query", "lists" -> "list")
+     */
+    public StandardAnalyzer(boolean removeStopWords, boolean stem) {
+        this.stem = stem;
+        if (removeStopWords) {
+            stopWords = new TermDictionary(ENGLISH_STOP_WORDS.length);
+            for (String w : ENGLISH_STOP_WORDS) stopWords.getOrAdd(w);
+        } else {
+            stopWords = null;
+        }
+    }
+
+    @Override
+    public void analyze(CharSequence text, TokenSink sink) {
+        char[] buffer = new char[32];
+        int len = 0;          // length of the word being accumulated
+        int prevCjk = -1;     // previous code point of the current CJK run, -1 outside a run
+        boolean cjkEmitted = false;
+        for (int i = 0; i < text.length(); ) {
+            int cp = Character.codePointAt(text, i);
+            i += Character.charCount(cp);
+
+            if (isCjk(cp)) {
+                if (len > 0) {
+                    emitWord(buffer, len, sink);
+                    len = 0;
+                }
+                if (prevCjk >= 0) {
+                    int n = Character.toChars(prevCjk, buffer, 0);
+                    n += Character.toChars(cp, buffer, n);
+                    sink.accept(buffer, n);
+                    cjkEmitted = true;
+                }
+                prevCjk = cp;
+                continue;
+            }
+            if (prevCjk >= 0) {
+                emitCjkUnigram(buffer, prevCjk, cjkEmitted, sink);
+                prevCjk = -1;
+                cjkEmitted = false;
+            }
+            if (Character.isLetterOrDigit(cp)) {
+                if (len + 2 > buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                len += Character.toChars(Character.toLowerCase(cp), buffer, len);
+            } else if (len > 0) {
+                emitWord(buffer, len, sink);
+                len = 0;
+            }
+        }
+        if (prevCjk >= 0) emitCjkUnigram(buffer, prevCjk, cjkEmitted, sink);
+        if (len > 0) emitWord(buffer, len, sink);
+    }
+
+    /**
+     * A CJK run of a single character produced no bigram, so it is indexed on its own.
+     */
+    private void emitCjkUnigram(char[] buffer, int cp, boolean runHadBigram, TokenSink sink) {
+        if (!runHadBigram) sink.accept(buffer, Character.toChars(cp, buffer, 0));
+    }
+
+    private void emitWord(char[] buffer, int len, TokenSink sink) {
+        if (stopWords != null && stopWords.get(buffer, len) >= 0) return;
+        if (stem) len = stemPlural(buffer, len);
+        sink.accept(buffer, len);
+    }
+
+    /**
+     * Harman's "S" stemmer: a conservative plural stripper that never touches short or
+     * non-plural words.
+     */
+    private static int stemPlural(char[] w, int len) {
+        if (len < 4 || w[len - 1] != 's') return len;
+        char c2 = w[len - 2], c3 = w[len - 3];
+        if (c3 == 'i' && c2 == 'e' && w[len - 4] != 'e' && w[len - 4] != 'a') {
+            w[len - 3] = 'y';
+            return len - 2;
+        }
+        if (c2 == 'e' && c3 != 'a' && c3 != 'e' && c3 != 'o') return len - 1;
+        if (c2 != 'u' && c2 != 's') return len - 1;
+        return len;
+    }
+
+    private static boolean isCjk(int cp) {
+        if (cp < 0x2E80) return false;
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.ta.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Interns index terms to dense int ids using an open-addressing hash table.
+ * Ids are assigned in insertion order starting at 0, so they can index plain arrays.
+ * Terms can be looked up straight from an analyzer's char buffer; a String is only
+ * allocated when a new term is added.
+ */
+final class TermDictionary {
+    private static final int EMPTY = -1;
+
+    private String[] terms = new String[16];
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    TermDictionary() {
+        this(16);
+    }
+
+    TermDictionary(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the id of the term, or -1 if it was never added
+     */
+    int get(String term) {
+        int slot = hash(term) & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == EMPTY) return -1;
+            if (terms[id].equals(term)) return id;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the id of the term, assigning the next free id if it is new
+     */
+    int getOrAdd(String term) {
+        int slot = hash(term) & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == EMPTY) break;
+            if (terms[id].equals(term)) return id;
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        if (id == terms.length) terms = Arrays.copyOf(terms, id * 2);
+        terms[id] = term;
+        slots[slot] = id;
+        if (size * 2 > slots.length) rehash();
+        return id;
+    }
+
+    /**
+     * Same as {@link #get(String)} for the first {@code len} chars of {@code buf}.
+     */
+    int get(char[] buf, int len) {
+        int slot = hash(buf, len) & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == EMPTY) return -1;
+            if (matches(terms[id], buf, len)) return id;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Same as {@link #getOrAdd(String)} for the first {@code len} chars of {@code buf}.
+     */
+    int getOrAdd(char[] buf, int len) {
+        int slot = hash(buf, len) & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == EMPTY) break;
+            if (matches(terms[id], buf, len)) return id;
+            slot = (slot + 1) & mask;
+        }
+        return getOrAdd(new String(buf, 0, len));
+    }
+
+    /**
+     * @return an independent dictionary with the same ids, which can be extended without
+     * affecting this one
+     */
+    TermDictionary copy() {
+        TermDictionary copy = new TermDictionary();
+        copy.terms = Arrays.copyOf(terms, terms.length);
+        copy.slots = Arrays.copyOf(slots, slots.length);
+        copy.mask = mask;
+        copy.size = size;
+        return copy;
+    }
+
+    String term(int id) {
+        return terms[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        int capacity = slots.length * 2;
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(terms[id]) & mask;
+            while (slots[slot] != EMPTY) slot = (slot + 1) & mask;
+            slots[slot] = id;
+        }
+    }
+
+    private static boolean matches(String term, char[] buf, int len) {
+        if (term.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (term.charAt(i) != buf[i]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(String term) {
+        return mix(term.hashCode());
+    }
+
+    // must agree with String.hashCode so both lookup paths land on the same slots
+    private static int hash(char[] buf, int len) {
+        int h = 0;
+        for (int i = 0; i < len; i++) h = 31 * h + buf[i];
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -18,6 +18,8 @@ public class TaToolWindowFactory implements ToolWindowFactory, DumbAware {
         TaToolWindowPanel panel = new TaToolWindowPanel();
         ContentFactory contentFactory = ContentFactory.getInstance();
         Content content = contentFactory.createContent(panel.getComponent(), "Course TA", false);
+        // stops the knowledge-base watcher when the tool window content is closed
+        content.setDisposer(panel::dispose);
 
         toolWindow.getContentManager().addContent(content);
     }
@@ -6,13 +6,26 @@ import com.formdev.flatlaf.extras.components.FlatButton;
 import com.formdev.flatlaf.extras.components.FlatTextArea;
 import com.formdev.flatlaf.ui.FlatScrollBarUI;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.example.ta.index.DocChunk;
 import org.example.ta.index.DocumentIndexer;
+import org.example.ta.index.IncrementalIndexer;
 import org.example.ta.index.IndexFileManager;
+import org.example.ta.index.IndexManifest;
+import org.example.ta.index.IndexSnapshotStore;
+import org.example.ta.index.KnowledgeBaseWatcher;
+import org.example.ta.index.VectorStore;
+import org.example.ta.llm.LlmGateway;
 import org.example.ta.llm.OpenRouterClient;
+import org.example.ta.llm.RequestPriority;
+import org.example.ta.llm.SemanticAnswerCache;
+import org.example.ta.retrieval.HybridRetriever;
+import org.example.ta.retrieval.IndexHolder;
 import org.example.ta.retrieval.SimpleRetriever;
+import org.example.ta.retrieval.StandardAnalyzer;
 
 import javax.swing.*;
 import javax.swing.border.Border;
@@ -29,6 +42,9 @@ import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 //import java.util.*;
 import java.util.stream.Collectors;
 
@@ -44,6 +60,9 @@ import java.util.stream.Collectors;
  */
 public class TaToolWindowPanel {
 
+    private static final String NO_INDEX_MESSAGE = "Please index documents first before asking questions.\n" +
+            "Note: this plugin example requires you to configure document path and OpenRouter API key in code or settings.\n";
+
     private final JPanel panel;
     // 换成 FlatTextArea，但兼容 JTextArea API
     private final FlatTextArea inputArea = new FlatTextArea();
@@ -51,8 +70,29 @@ public class TaToolWindowPanel {
     private JButton askBtn = new JButton("Ask TA");
     private JButton askWithReasoningBtn = new JButton("Ask with Reasoning");
     private final JProgressBar loadingBar = new JProgressBar();
-    private SimpleRetriever retriever;
+    // 对外提供查询的索引快照；重建索引时整体原子替换，查询不会阻塞也不会看到半更新的状态
+    private final IndexHolder indexHolder = new IndexHolder();
     private final IndexFileManager indexFileManager = new IndexFileManager();
+    private final IndexSnapshotStore snapshotStore = new IndexSnapshotStore();
+    private final DocumentIndexer documentIndexer = new DocumentIndexer();
+    // 近义问题的答案缓存：问题向量相近且检索到相同分块时直接复用之前的回答
+    private final SemanticAnswerCache semanticCache = new SemanticAnswerCache(SEMANTIC_CACHE_SIZE, SEMANTIC_CACHE_THRESHOLD);
+    private final IncrementalIndexer incrementalIndexer = new IncrementalIndexer(documentIndexer);
+    // 当前索引对应的文件清单与分块，增量重建时以此为基准；由 indexLock 保护
+    private final Object indexLock = new Object();
+    private IndexManifest indexManifest;
+    private List<DocChunk> indexedChunks = List.of();
+    private List<String> indexedPaths = List.of();
+    // 与 indexedChunks 对应的检索器和向量库，作为增量更新的基础（快照路径不匹配时可能尚未对外提供查询）
+    private SimpleRetriever indexedRetriever;
+    private VectorStore indexedVectors;
+    // 监听知识库目录，文件变化后只更新受影响的文件
+    private final KnowledgeBaseWatcher watcher = new KnowledgeBaseWatcher(this::onKnowledgeBaseChanged);
+
+    // 近义问题缓存的容量与相似度阈值：哈希向量下改写措辞、标点、大小写的同一问题在 0.86 以上，
+    // 不同问题（如 quicksort / mergesort 的复杂度）可达 0.82
+    private static final int SEMANTIC_CACHE_SIZE = 1024;
+    private static final double SEMANTIC_CACHE_THRESHOLD = 0.85;
 
     // 颜色 & UI 常量
     private static final Color MAC_BG = new JBColor(new Color(246, 246, 248), new Color(24, 24, 26));
@@ -585,8 +625,8 @@ public class TaToolWindowPanel {
         askWithReasoningBtn = createPrimaryButton("Ask with Reasoning");
         askBtn = createPrimaryButton("Ask TA");
 
-        askWithReasoningBtn.addActionListener(e -> handleAskQuestion(true));
-        askBtn.addActionListener(e -> handleAskQuestion(false));
+        askWithReasoningBtn.addActionListener(e -> handleAskQuestion(true, RequestPriority.INTERACTIVE));
+        askBtn.addActionListener(e -> handleAskQuestion(false, RequestPriority.INTERACTIVE));
 
         buttonRow.add(askWithReasoningBtn);
         buttonRow.add(askBtn);
@@ -619,7 +659,7 @@ public class TaToolWindowPanel {
     /********************
      * 提问逻辑（UI 包装）
      ********************/
-    private void handleAskQuestion(boolean withReasoning) {
+    private void handleAskQuestion(boolean withReasoning, RequestPriority priority) {
         String q = inputArea.getText().trim();
         if (q.isEmpty()) return;
 
@@ -633,12 +673,14 @@ public class TaToolWindowPanel {
         askBtn.setEnabled(false);
         askWithReasoningBtn.setEnabled(false);
 
-        new Thread(() -> {
-            try {
-                String answer = withReasoning ? performRAGProcessWithReasoning(q) : performRAGProcess(q);
+        StreamingAnswer streaming = new StreamingAnswer(q);
+        CompletableFuture<String> answerFuture = withReasoning
+                ? performRAGProcessWithReasoning(q, priority)
+                : performRAGProcess(q, streaming, priority);
+        answerFuture.whenComplete((answer, failure) -> {
+            if (failure == null) {
                 SwingUtilities.invokeLater(() -> {
-                    appendUserMessage(q);
-                    appendAssistantMessage(answer);
+                    streaming.finish(answer);
                     stopLoadingAnimation();
                     inputArea.setText("");
                     inputArea.setEnabled(true);
@@ -646,7 +688,9 @@ public class TaToolWindowPanel {
                     askWithReasoningBtn.setEnabled(true);
                     inputArea.requestFocusInWindow();
                 });
-            } catch (Exception ex) {
+            } else {
+                Throwable ex = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure;
                 SwingUtilities.invokeLater(() -> {
                     appendSystemMessage("Error: " + ex.getMessage());
                     stopLoadingAnimation();
@@ -656,7 +700,65 @@ public class TaToolWindowPanel {
                     ex.printStackTrace();
                 });
             }
-        }).start();
+        });
+    }
+
+    /**
+     * Shows an answer while it is being streamed. Pieces arrive on the request thread and are
+     * collected until the EDT picks them up, so a fast stream costs one UI update per repaint
+     * rather than one per token. When the answer is complete the streamed text is replaced by
+     * the formatted answer.
+     */
+    private final class StreamingAnswer implements OpenRouterClient.StreamListener {
+        private final String question;
+        private final StringBuilder pending = new StringBuilder();
+        private boolean flushScheduled;
+        private int start = -1; // offset of the streamed text in outputArea; EDT only
+
+        StreamingAnswer(String question) {
+            this.question = question;
+        }
+
+        @Override
+        public void onDelta(String text) {
+            synchronized (pending) {
+                pending.append(text);
+                if (flushScheduled) return;
+                flushScheduled = true;
+            }
+            SwingUtilities.invokeLater(this::flush);
+        }
+
+        private void flush() {
+            String text;
+            synchronized (pending) {
+                text = pending.toString();
+                pending.setLength(0);
+                flushScheduled = false;
+            }
+            if (text.isEmpty()) return;
+            if (start < 0) {
+                appendUserMessage(question);
+                outputArea.append("TA:\n");
+                start = outputArea.getDocument().getLength();
+            }
+            outputArea.append(text);
+            scrollOutputToBottom();
+        }
+
+        /**
+         * Show the complete answer; called on the EDT.
+         */
+        void finish(String answer) {
+            flush();
+            if (start < 0) {
+                appendUserMessage(question);
+                appendAssistantMessage(answer);
+                return;
+            }
+            outputArea.replaceRange(formatAssistantResponse(answer) + "\n\n", start, outputArea.getDocument().getLength());
+            scrollOutputToBottom();
+        }
     }
 
     private void startLoadingAnimation() {
@@ -911,7 +1013,7 @@ public class TaToolWindowPanel {
             kbPathCountLabel.setText(paths.size() + " folders indexed");
         }
         if (kbStatusLabel != null) {
-            kbStatusLabel.setText(retriever == null ? "Index not ready" : "Ready for questions");
+            kbStatusLabel.setText(indexHolder.peek() == null ? "Index not ready" : "Ready for questions");
         }
     }
 
@@ -1172,12 +1274,24 @@ public class TaToolWindowPanel {
                                 List<String> currentPaths = indexFileManager.loadDocumentPaths();
                                 currentPaths.remove(path);
                                 indexFileManager.saveDocumentPaths(currentPaths);
+                                watcher.watch(currentPaths);
 
                                 // 更新显示
                                 root.remove(selectedNode);
                                 treeModel.reload();
 
                                 outputArea.append("Deleted \"" + path + "\" from knowledge base.\n");
+
+                                // 从检索索引中移除该路径下的分块
+                                new Thread(() -> {
+                                    try {
+                                        IncrementalIndexer.Result result = updateIndex(currentPaths);
+                                        SwingUtilities.invokeLater(() -> outputArea.append(
+                                                "Removed " + result.removedFiles + " files from the index.\n"));
+                                    } catch (Exception ex) {
+                                        ex.printStackTrace();
+                                    }
+                                }).start();
                             }
                         } else {
                             Messages.showInfoMessage(dialog, "Please select a directory path to delete, not a file.", "Delete Path");
@@ -1208,6 +1322,7 @@ public class TaToolWindowPanel {
 
         // Save the new path
         indexFileManager.addDocumentPath(path);
+        watcher.watch(indexFileManager.loadDocumentPaths());
 
         outputArea.setText("Indexing started...\n");
         outputArea.append("Index file location: " + indexFileManager.getIndexFilePath() + "\n");
@@ -1215,16 +1330,17 @@ public class TaToolWindowPanel {
         // Perform indexing in background thread to avoid freezing UI
         new Thread(() -> {
             try {
-                DocumentIndexer indexer = new DocumentIndexer();
-                List<DocChunk> chunks = indexer.indexDirectory(dir);
-
-                // Create vector store and retriever
-                retriever = new SimpleRetriever(chunks);
+                // Only the files of the new directory are parsed; the rest of the index is reused
+                IncrementalIndexer.Result result = updateIndex(indexFileManager.loadDocumentPaths());
 
                 // Update UI on EDT
                 SwingUtilities.invokeLater(() -> {
                     outputArea.append("Indexing completed!\n");
-                    outputArea.append("Indexed " + chunks.size() + " chunks.\n");
+                    outputArea.append("Parsed " + result.parsedFiles + " new files, "
+                            + result.chunks.size() + " chunks in total.\n");
+                    if (result.failedFiles > 0) {
+                        outputArea.append(result.failedFiles + " files could not be parsed and will be retried on the next reindex.\n");
+                    }
                     outputArea.append("Retriever and vector store created and ready for queries.\n");
                 });
             } catch (Exception ex) {
@@ -1248,26 +1364,26 @@ public class TaToolWindowPanel {
 
         new Thread(() -> {
             try {
-                DocumentIndexer indexer = new DocumentIndexer();
-                List<DocChunk> allChunks = new java.util.ArrayList<>();
-
                 for (String path : paths) {
                     File dir = new File(path);
                     if (dir.exists() && dir.isDirectory()) {
                         SwingUtilities.invokeLater(() ->
                                 outputArea.append("Indexing: " + path + "\n"));
-                        List<DocChunk> chunks = indexer.indexDirectory(dir);
-                        allChunks.addAll(chunks);
                     }
                 }
 
-                // Create vector store and retriever
-                retriever = new SimpleRetriever(allChunks);
+                // Only new or changed files are parsed again
+                IncrementalIndexer.Result result = updateIndex(paths);
 
                 // Update UI on EDT
                 SwingUtilities.invokeLater(() -> {
                     outputArea.append("Reindexing completed!\n");
-                    outputArea.append("Total indexed chunks: " + allChunks.size() + "\n");
+                    outputArea.append("Parsed " + result.parsedFiles + " files, reused " + result.unchangedFiles
+                            + " unchanged, removed " + result.removedFiles + ".\n");
+                    outputArea.append("Total indexed chunks: " + result.chunks.size() + "\n");
+                    if (result.failedFiles > 0) {
+                        outputArea.append(result.failedFiles + " files could not be parsed and will be retried on the next reindex.\n");
+                    }
                     outputArea.append("Retriever and vector store updated.\n");
                 });
             } catch (Exception ex) {
@@ -1279,55 +1395,195 @@ public class TaToolWindowPanel {
         }).start();
     }
 
-    private String performRAGProcess(String question) throws Exception {
-        return performRAGProcessBase(question, false);
+    /**
+     * Bring the index up to date with the given document paths, re-parsing only new or changed
+     * files, and swap in a new retriever and snapshot if anything changed.
+     */
+    private IncrementalIndexer.Result updateIndex(List<String> paths) throws IOException {
+        synchronized (indexLock) {
+            return applyUpdate(paths, incrementalIndexer.update(paths, indexManifest, indexedChunks));
+        }
+    }
+
+    /**
+     * Same as {@link #updateIndex(List)}, but only the given changed paths are looked at; every
+     * other file keeps its chunks without being checked.
+     */
+    private IncrementalIndexer.Result updateIndexForFiles(Set<String> changedPaths, List<String> paths) throws IOException {
+        synchronized (indexLock) {
+            if (indexManifest == null || !paths.equals(indexedPaths)) {
+                return updateIndex(paths);
+            }
+            return applyUpdate(paths, incrementalIndexer.updateFiles(changedPaths, paths, indexManifest, indexedChunks));
+        }
+    }
+
+    /**
+     * Make a new index current, and drop the cached answers if its content differs from the
+     * index they were generated against.
+     */
+    private void publishIndex(HybridRetriever retriever, List<DocChunk> chunks, VectorStore vectors) {
+        indexHolder.publish(retriever, chunks, vectors);
+        IndexHolder.Snapshot published = indexHolder.peek();
+        if (published != null) {
+            LlmGateway.getInstance().getResponseCache().setIndexVersion(published.fingerprint);
+        }
+    }
+
+    /**
+     * Build the updated index next to the live one and publish it. Unchanged chunks keep their
+     * postings from the previous retriever and their embeddings from a copy of the previous
+     * vector store, which shares its rows, so only the re-parsed files are analyzed and embedded
+     * again, and the published index is never modified. Must be called holding indexLock.
+     */
+    private IncrementalIndexer.Result applyUpdate(List<String> paths, IncrementalIndexer.Result result) {
+        if (result.hasChanges() || indexHolder.peek() == null || !paths.equals(indexedPaths)) {
+            SimpleRetriever updated = indexedRetriever == null
+                    ? new SimpleRetriever(result.chunks)
+                    : indexedRetriever.update(result.chunks, result.previousChunkIds);
+            VectorStore vectors;
+            if (indexedVectors == null) {
+                vectors = documentIndexer.createVectorStore(result.chunks);
+            } else {
+                vectors = indexedVectors.copy();
+                documentIndexer.updateVectorStore(vectors, indexedChunks, result.chunks);
+            }
+            snapshotStore.saveLater(new IndexSnapshotStore.Snapshot(paths, result.manifest, result.chunks, updated, vectors));
+            publishIndex(new HybridRetriever(updated, vectors, documentIndexer::embed), result.chunks, vectors);
+            indexedRetriever = updated;
+            indexedVectors = vectors;
+        }
+        indexManifest = result.manifest;
+        indexedChunks = result.chunks;
+        indexedPaths = paths;
+        return result;
+    }
+
+    /**
+     * Called by the watcher on its background thread with a debounced batch of changed paths.
+     */
+    private void onKnowledgeBaseChanged(Set<String> changedPaths) {
+        try {
+            IncrementalIndexer.Result result = updateIndexForFiles(changedPaths, indexFileManager.loadDocumentPaths());
+            if (!result.hasChanges()) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                appendSystemMessage("Knowledge base changed: parsed " + result.parsedFiles + " files, removed "
+                        + result.removedFiles + ". " + result.chunks.size() + " chunks indexed.");
+                refreshKbStats();
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private CompletableFuture<String> performRAGProcess(String question, OpenRouterClient.StreamListener listener,
+                                                        RequestPriority priority) {
+        return performRAGProcessBase(question, false, listener, priority);
     }
 
     /**
      * Perform the full RAG process with reasoning: retrieve relevant chunks and generate an answer with reasoning
      *
      * @param question The user's question
-     * @return The generated answer with reasoning
-     * @throws Exception If any error occurs during the process
+     * @param priority Where the question waits if the request rate limit is reached
+     * @return A future completed with the generated answer with reasoning
      */
 
-    private String performRAGProcessWithReasoning(String question) throws Exception {
-        return performRAGProcessBase(question, true);
+    private CompletableFuture<String> performRAGProcessWithReasoning(String question, RequestPriority priority) {
+        return performRAGProcessBase(question, true, null, priority);
     }
     /**
-     * Base method for performing the RAG process
+     * Base method for performing the RAG process. Retrieval runs on a pooled thread; the API
+     * calls are asynchronous, so no thread waits for the model. A plain question that
+     * paraphrases an answered one and retrieves the same chunks is answered from the
+     * semantic cache, marked as cached, without calling the model.
      *
      * @param question The user's question
      * @param withReasoning Whether to include reasoning in the response
-     * @return The generated answer
-     * @throws Exception If any error occurs during the process
+     * @param listener Receives the answer as it is generated, or null to wait for the whole answer
+     * @param priority Where the question waits if the request rate limit is reached
+     * @return A future completed with the generated answer, or exceptionally if any step fails
      */
 
-    private String performRAGProcessBase(String question, boolean withReasoning) throws Exception {
+    private CompletableFuture<String> performRAGProcessBase(String question, boolean withReasoning,
+                                                            OpenRouterClient.StreamListener listener,
+                                                            RequestPriority priority) {
         // Check if we have indexed documents
         String validationError = validateRetriever();
         if (validationError != null) {
-            return validationError;
+            return CompletableFuture.completedFuture(validationError);
         }
 
-        // Retrieve relevant chunks
-        List<SimpleRetriever.ScoredChunk> relevantChunks = retriever.retrieve(question, 3);
+        return CompletableFuture
+                .supplyAsync(() -> retrieveContext(question), AppExecutorUtil.getAppExecutorService())
+                .thenCompose(relevantChunks -> {
+                    if (relevantChunks == null) {
+                        return CompletableFuture.completedFuture(NO_INDEX_MESSAGE);
+                    }
+                    List<String> contextTexts = formatContext(relevantChunks);
+                    if (withReasoning) {
+                        return generateAnswer(question, contextTexts, true, listener, priority);
+                    }
+                    List<String> chunkIds = relevantChunks.stream().map(result -> result.chunk.id()).toList();
+                    double[] questionVector = documentIndexer.embed(question);
+                    SemanticAnswerCache.Hit hit = semanticCache.lookup(questionVector, chunkIds);
+                    if (hit != null) {
+                        return CompletableFuture.completedFuture(String.format(
+                                "(cached answer to a similar question: \"%s\")\n\n%s", hit.question, hit.answer));
+                    }
+                    boolean fromModel = LlmGateway.getInstance().hasApiKey();
+                    return generateAnswer(question, contextTexts, false, listener, priority).thenApply(answer -> {
+                        // demonstration answers without an API key are not worth keeping
+                        if (fromModel && !answer.isBlank()) {
+                            semanticCache.put(question, questionVector, chunkIds, answer);
+                        }
+                        return answer;
+                    });
+                });
+    }
+
+    /**
+     * Retrieve the chunks relevant to the question.
+     *
+     * @return the chunks, or null if the index was cleared since the question was validated
+     */
+    private List<HybridRetriever.ScoredChunk> retrieveContext(String question) {
+        // Retrieve relevant chunks by both term matches and embedding similarity, from one
+        // index version even if a reindex publishes a new one meanwhile
+        try (IndexHolder.Lease lease = indexHolder.acquire()) {
+            if (lease == null) {
+                return null;
+            }
+            return lease.snapshot.retriever.retrieve(question, 3);
+        }
+    }
 
+    /**
+     * Format the retrieved chunks with their source for the prompt.
+     */
+    private List<String> formatContext(List<HybridRetriever.ScoredChunk> relevantChunks) {
         // Extract the text content from the chunks
-        List<String> contextTexts = relevantChunks.stream()
+        return relevantChunks.stream()
                 .map(result -> String.format("[%s, page %d] %s",
                         getFileName(result.chunk.sourceFile),
                         result.chunk.pageNumber,
                         result.chunk.text))
                 .collect(Collectors.toList());
+    }
 
-        // Get API key (in a real implementation, this should come from settings)
-        String apiKey = System.getenv("OPENROUTER_API_KEY");
-        if (apiKey == null || apiKey.isEmpty()) {
+    private CompletableFuture<String> generateAnswer(String question, List<String> contextTexts, boolean withReasoning,
+                                                     OpenRouterClient.StreamListener listener,
+                                                     RequestPriority priority) {
+        // The API key and models are read once by the shared gateway
+        LlmGateway gateway = LlmGateway.getInstance();
+        if (!gateway.hasApiKey()) {
             // Fallback to DeepSeek for demonstration
-            return "To use the full RAG capabilities with OpenRouter, please set the OPENROUTER_API_KEY environment variable.\n" +
+            return CompletableFuture.completedFuture(
+                    "To use the full RAG capabilities with OpenRouter, please set the OPENROUTER_API_KEY environment variable.\n" +
                     "Using fallback demonstration mode.\n\n" +
-                    generateDemonstrationAnswer(question, contextTexts);
+                    generateDemonstrationAnswer(question, contextTexts));
         }
 
         if (withReasoning) {
@@ -1350,40 +1606,42 @@ public class TaToolWindowPanel {
             contextBuilder.append("Answer:");
 
             // Call OpenRouter API with reasoning
-            OpenRouterClient client = new OpenRouterClient(apiKey, "alibaba/tongyi-deepresearch-30b-a3b:free");
-            OpenRouterClient.ReasoningResponse response = client.generateAnswerWithReasoning(contextBuilder.toString());
-
-            // Continue reasoning with follow-up question
-            java.util.List<OpenRouterClient.Message> messages = new java.util.ArrayList<>();
-            messages.add(new OpenRouterClient.Message("user", contextBuilder.toString()));
-            messages.add(new OpenRouterClient.Message("assistant", response.content, response.reasoningDetails));
-            messages.add(new OpenRouterClient.Message("user", "Are you sure? Think carefully."));
-
-            OpenRouterClient.ReasoningResponse response2 = client.continueReasoning(messages);
-
-            // Format the output
-            StringBuilder result = new StringBuilder();
-            result.append("First response:\n");
-            result.append(response.content).append("\n\n");
-            result.append("Reasoning details:\n");
-            result.append(response.reasoningDetails).append("\n\n");
-            result.append("Second response (continued reasoning):\n");
-            result.append(response2.content).append("\n\n");
-            result.append("Reasoning details:\n");
-            result.append(response2.reasoningDetails).append("\n");
-
-            return result.toString();
+            OpenRouterClient client = gateway.questionClient().withPriority(priority);
+            return client.generateAnswerWithReasoningAsync(contextBuilder.toString()).thenCompose(response -> {
+                // Continue reasoning with follow-up question
+                java.util.List<OpenRouterClient.Message> messages = new java.util.ArrayList<>();
+                messages.add(new OpenRouterClient.Message("user", contextBuilder.toString()));
+                messages.add(new OpenRouterClient.Message("assistant", response.content, response.reasoningDetails));
+                messages.add(new OpenRouterClient.Message("user", "Are you sure? Think carefully."));
+
+                return client.continueReasoningAsync(messages).thenApply(response2 -> {
+                    // Format the output
+                    StringBuilder result = new StringBuilder();
+                    result.append("First response:\n");
+                    result.append(response.content).append("\n\n");
+                    result.append("Reasoning details:\n");
+                    result.append(response.reasoningDetails).append("\n\n");
+                    result.append("Second response (continued reasoning):\n");
+                    result.append(response2.content).append("\n\n");
+                    result.append("Reasoning details:\n");
+                    result.append(response2.reasoningDetails).append("\n");
+
+                    return result.toString();
+                });
+            });
         } else {
             // Call OpenRouter API
-            OpenRouterClient client = new OpenRouterClient(apiKey, "alibaba/tongyi-deepresearch-30b-a3b:free");
-            return client.generateAnswer(question, contextTexts);
+            OpenRouterClient client = gateway.questionClient().withPriority(priority);
+            if (listener != null) {
+                return client.generateAnswerStreamingAsync(question, contextTexts, listener);
+            }
+            return client.generateAnswerAsync(question, contextTexts);
         }
     }
 
     private String validateRetriever() {
-        if (retriever == null) {
-            return "Please index documents first before asking questions.\n" +
-                    "Note: this plugin example requires you to configure document path and OpenRouter API key in code or settings.\n";
+        if (indexHolder.peek() == null) {
+            return NO_INDEX_MESSAGE;
         }
         return null;
     }
@@ -1458,21 +1716,62 @@ public class TaToolWindowPanel {
     }
 
     /**
-     * 在插件启动时自动重新索引所有已配置的文档路径
+     * 在插件启动时加载索引快照，随后在后台增量检查文件变化（只重新解析新增或修改过的文件）
      */
     private void autoReindexOnStartup() {
         // 使用SwingUtilities.invokeLater确保UI完全初始化后再执行
         SwingUtilities.invokeLater(() -> {
             List<String> paths = indexFileManager.loadDocumentPaths();
-            if (!paths.isEmpty()) {
-                appendSystemMessage("Auto-reindexing all documents on startup...");
-                reindexAllDocuments(panel);
+            if (paths.isEmpty()) {
+                return;
             }
+            new Thread(() -> {
+                long start = System.currentTimeMillis();
+                IndexSnapshotStore.Snapshot snapshot =
+                        snapshotStore.load(SimpleRetriever.Scoring.TF_IDF, new StandardAnalyzer());
+                boolean usable = snapshot != null && snapshot.documentPaths.equals(paths);
+                if (snapshot != null) {
+                    synchronized (indexLock) {
+                        indexManifest = snapshot.manifest;
+                        indexedChunks = snapshot.chunks;
+                        indexedPaths = snapshot.documentPaths;
+                        indexedRetriever = snapshot.retriever;
+                        indexedVectors = snapshot.vectors;
+                        if (usable) {
+                            publishIndex(new HybridRetriever(snapshot.retriever, snapshot.vectors, documentIndexer::embed),
+                                    snapshot.chunks, snapshot.vectors);
+                        }
+                    }
+                }
+                watcher.watch(paths);
+                SwingUtilities.invokeLater(() -> {
+                    if (usable) {
+                        appendSystemMessage("Loaded index snapshot: " + snapshot.chunks.size() + " chunks in "
+                                + (System.currentTimeMillis() - start) + " ms.");
+                        refreshKbStats();
+                    }
+                    appendSystemMessage("Checking documents for changes on startup...");
+                    reindexAllDocuments(panel);
+                });
+            }).start();
         });
     }
 
     public JComponent getComponent() { return panel; }
+    public void dispose() {
+        Disposer.dispose(watcher);
+        snapshotStore.close();
+        indexHolder.clear();
+    }
     public static TaToolWindowPanel getInstance() { return instance; }
     public void setInputText(String text) { inputArea.setText(text); }
     public void ask() { askBtn.doClick(); }
+
+    /**
+     * Ask the question in the input area, like the Ask button, with the given priority for the
+     * request; does nothing while a question is being answered.
+     */
+    public void ask(RequestPriority priority) {
+        if (askBtn.isEnabled()) handleAskQuestion(false, priority);
+    }
 }
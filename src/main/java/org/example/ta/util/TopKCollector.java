@@ -0,0 +1,119 @@
+package org.example.ta.util;
+
+/**
+ * Keeps the k best (id, score) pairs seen so far in a fixed-size binary min-heap over primitive
+ * arrays, so ranking n candidates costs O(n log k) and allocates nothing per candidate.
+ * Higher scores rank first; equal scores rank the lower id first, which matches a stable
+ * descending sort over candidates offered in id order.
+ * <p>
+ * Instances are not thread-safe but can be reused across queries through {@link #reset()}.
+ */
+public final class TopKCollector {
+    private final int k;
+    private final int[] ids;
+    private final double[] scores;
+    private int size;
+
+    public TopKCollector(int k) {
+        this.k = Math.max(0, k);
+        this.ids = new int[this.k];
+        this.scores = new double[this.k];
+    }
+
+    /**
+     * Offer a candidate.
+     *
+     * @return true if the candidate is currently among the best k
+     */
+    public boolean offer(int id, double score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (k == 0 || !better(id, score, ids[0], scores[0])) {
+            return false;
+        }
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0, size);
+        return true;
+    }
+
+    /**
+     * @return true once k candidates have been collected
+     */
+    public boolean isFull() {
+        return size == k;
+    }
+
+    /**
+     * @return the score a candidate must beat to enter a full collector, or negative infinity while it is not full
+     */
+    public double threshold() {
+        return size == k && k > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sort the collected entries best first into the given arrays and empty the collector.
+     *
+     * @return the number of entries written
+     */
+    public int drainTo(int[] outIds, double[] outScores) {
+        int n = size;
+        // heapsort: repeatedly move the current worst behind the shrinking heap
+        for (int end = n - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        System.arraycopy(ids, 0, outIds, 0, n);
+        System.arraycopy(scores, 0, outScores, 0, n);
+        size = 0;
+        return n;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    private static boolean better(int idA, double scoreA, int idB, double scoreB) {
+        int c = Double.compare(scoreA, scoreB);
+        return c > 0 || (c == 0 && idA < idB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(ids[parent], scores[parent], ids[i], scores[i])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= n) break;
+            int worst = left;
+            int right = left + 1;
+            if (right < n && better(ids[left], scores[left], ids[right], scores[right])) worst = right;
+            if (!better(ids[i], scores[i], ids[worst], scores[worst])) break;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+    }
+}
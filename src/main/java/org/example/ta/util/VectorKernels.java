@@ -0,0 +1,105 @@
+package org.example.ta.util;
+
+/**
+ * Similarity kernels over float arrays. On startup the fastest available implementation is
+ * chosen: a SIMD one built on the incubating Java Vector API when the {@code jdk.incubator.vector}
+ * module is present (it needs {@code --add-modules jdk.incubator.vector}) and the hardware has
+ * vector registers of at least 128 bits, otherwise a plain scalar loop.
+ * <p>
+ * The SIMD kernel lives in its own class and is only loaded through reflection, so the plugin
+ * still runs on a JVM where the module is not resolved.
+ */
+public final class VectorKernels {
+    private static final Kernel KERNEL = select();
+
+    private VectorKernels() {
+    }
+
+    /**
+     * One implementation of the kernels.
+     */
+    interface Kernel {
+        float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        float dot(float[] a, int aOffset, byte[] b, int bOffset, int length);
+
+        /**
+         * @return the number of floats processed per instruction
+         */
+        int lanes();
+    }
+
+    /**
+     * Dot product of {@code a[aOffset .. aOffset + length)} and {@code b[bOffset .. bOffset + length)}.
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Dot product of float {@code a[aOffset .. aOffset + length)} with int8 codes
+     * {@code b[bOffset .. bOffset + length)}, for asymmetric distance against quantized vectors.
+     */
+    public static float dot(float[] a, int aOffset, byte[] b, int bOffset, int length) {
+        return KERNEL.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Dot product of two vectors of the same length.
+     */
+    public static float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vectors must have the same dimensions");
+        }
+        return KERNEL.dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * @return true if the SIMD kernel is in use
+     */
+    public static boolean isVectorized() {
+        return KERNEL.lanes() > 1;
+    }
+
+    private static Kernel select() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarKernel();
+        }
+        try {
+            Kernel simd = (Kernel) Class.forName("org.example.ta.util.SimdKernel")
+                    .getDeclaredConstructor().newInstance();
+            // narrower registers gain nothing over the JIT's own unrolling
+            if (simd.lanes() >= 4) {
+                return simd;
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("[Vector] SIMD kernels unavailable, using scalar fallback: " + e);
+        }
+        return new ScalarKernel();
+    }
+
+    static final class ScalarKernel implements Kernel {
+        @Override
+        public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+            float sum = 0f;
+            for (int i = 0; i < length; i++) {
+                sum += a[aOffset + i] * b[bOffset + i];
+            }
+            return sum;
+        }
+
+        @Override
+        public float dot(float[] a, int aOffset, byte[] b, int bOffset, int length) {
+            float sum = 0f;
+            for (int i = 0; i < length; i++) {
+                sum += a[aOffset + i] * b[bOffset + i];
+            }
+            return sum;
+        }
+
+        @Override
+        public int lanes() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.ta.util;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorKernels} implementation on the Java Vector API, using the widest float species
+ * the CPU supports (8 lanes on AVX2, 16 on AVX-512). Int8 codes are widened to float in
+ * registers. Only loaded by {@link VectorKernels} after it checked that the incubator module is
+ * present. It lives in the {@code simd} source set, the only one compiled against that module.
+ */
+final class SimdKernel implements VectorKernels.Kernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    // one byte per float lane, so a load of codes widens to exactly one float vector; the
+    // narrowest byte shape is 64 bits, so fewer than 8 float lanes fall back to scalar code
+    private static final VectorSpecies<Byte> BYTE_SPECIES = SPECIES.length() >= 8
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.length() * Byte.SIZE)) : null;
+
+    @Override
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        // two independent accumulators hide the latency of the fused multiply-add
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        FloatVector acc2 = FloatVector.zero(SPECIES);
+        int step = SPECIES.length();
+        for (; i + step < bound; i += 2 * step) {
+            acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc1);
+            acc2 = FloatVector.fromArray(SPECIES, a, aOffset + i + step)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i + step), acc2);
+        }
+        for (; i < bound; i += step) {
+            acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc1);
+        }
+        float sum = acc1.add(acc2).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int i = 0;
+        float sum = 0f;
+        if (BYTE_SPECIES != null) {
+            int bound = SPECIES.loopBound(length);
+            FloatVector acc = FloatVector.zero(SPECIES);
+            for (; i < bound; i += SPECIES.length()) {
+                FloatVector codes = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, b, bOffset + i)
+                        .convertShape(VectorOperators.B2F, SPECIES, 0);
+                acc = FloatVector.fromArray(SPECIES, a, aOffset + i).fma(codes, acc);
+            }
+            sum = acc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}